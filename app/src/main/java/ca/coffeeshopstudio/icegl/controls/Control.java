@@ -18,8 +18,11 @@ package ca.coffeeshopstudio.icegl.controls;
 
 import android.view.MotionEvent;
 
+import ca.coffeeshopstudio.icegl.gl.FrameStats;
 import ca.coffeeshopstudio.icegl.gl.GLObject;
+import ca.coffeeshopstudio.icegl.gl.RenderQueue;
 import ca.coffeeshopstudio.icegl.gl.ScreenConfiguration;
+import ca.coffeeshopstudio.icegl.gl.TextureAtlas;
 
 public abstract class Control implements IControl, OnTouchListener
 {
@@ -27,6 +30,8 @@ public abstract class Control implements IControl, OnTouchListener
      * Callback Function to allow custom event handling when touched
      */
     public OnTouchListener onTouchListener = null;
+    //The attached control manager
+    protected final IControlManager icm;
     protected GLObject[] glo;
     protected boolean enabled = true;
     protected boolean visible = true;
@@ -43,6 +48,27 @@ public abstract class Control implements IControl, OnTouchListener
     private float scale;
     private int gloCount = 1; //by default we only have 1 item to draw.  some objects such as Label may override this.
     private boolean dirty = false; //if true, will rebuild the GLObjects
+    private int layer = RenderQueue.LAYER_DEFAULT; //controls on higher layers draw on top
+    private TextureAtlas.Region textureRegion; //atlas region we draw from, if any
+    private int textureRegionVersion;
+    private boolean textureLost = false; //our region was freed and nothing replaced it yet
+    //reused for every move so dragging doesn't allocate a command per event
+    private final Object moveLock = new Object();
+    private float pendingLeft;
+    private float pendingBottom;
+    private boolean moveQueued = false;
+    private final Runnable applyMove = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (moveLock) {
+                moveQueued = false;
+                left = pendingLeft;
+                bottom = pendingBottom;
+            }
+            icm.updateControlBounds(Control.this);
+            buildGLObjects();
+        }
+    };
 
     /**
      * Default constructor
@@ -55,6 +81,7 @@ public abstract class Control implements IControl, OnTouchListener
         {
             throw new IllegalArgumentException("no valid control manager to assign control to");
         }
+        this.icm = icm;
         setGloCount(gloCount);
         icm.addControl(this);
     }
@@ -63,16 +90,25 @@ public abstract class Control implements IControl, OnTouchListener
      * Configure the GL Objects and prepare them for drawing to our surface
      */
     protected void buildGLObjects()
+    {
+        FrameStats.countRebuild();
+        generateGeometry();
+        builtTexture = true;
+        dirty = false;
+    }
+
+    /**
+     * Write the vertices and texture coordinates of our GL Objects.  Controls that lay out their
+     * own clones can override this instead of buildGLObjects
+     */
+    protected void generateGeometry()
     {
         setGlObjectDimensions(glo[0], left, bottom, width, height, scale);
         for (GLObject glInstance : glo)
         {
-            glInstance.generateIndices();
             glInstance.generateVertices();
             glInstance.generateTextures();
         }
-        builtTexture = true;
-        dirty = false;
     }
 
     /**
@@ -121,10 +157,15 @@ public abstract class Control implements IControl, OnTouchListener
      * @param left left position based on Grid units
      */
     @Override
-    public void setLeft(int left)
+    public void setLeft(final int left)
     {
-        gridLeft = left;
-        setLeftRaw(gridLeft * ScreenConfiguration.getTileWidth());
+        icm.runOnGLThread(new Runnable() {
+            @Override
+            public void run() {
+                gridLeft = left;
+                setLeftRaw(gridLeft * ScreenConfiguration.getTileWidth());
+            }
+        });
     }
 
     /**
@@ -142,10 +183,15 @@ public abstract class Control implements IControl, OnTouchListener
      * @param bottom bottom position based on Grid units
      */
     @Override
-    public void setBottom(int bottom)
+    public void setBottom(final int bottom)
     {
-        gridBottom = bottom;
-        setBottomRaw(gridBottom * ScreenConfiguration.getTileHeight());
+        icm.runOnGLThread(new Runnable() {
+            @Override
+            public void run() {
+                gridBottom = bottom;
+                setBottomRaw(gridBottom * ScreenConfiguration.getTileHeight());
+            }
+        });
     }
 
     /**
@@ -163,11 +209,15 @@ public abstract class Control implements IControl, OnTouchListener
      * @param width how wide of the control based in Grid units
      */
     @Override
-    public void setWidth(int width)
+    public void setWidth(final int width)
     {
-        if (width < 0) width = 0;
-        gridWidth = width;
-        setWidthRaw(gridWidth * ScreenConfiguration.getTileWidth());
+        icm.runOnGLThread(new Runnable() {
+            @Override
+            public void run() {
+                gridWidth = width < 0 ? 0 : width;
+                setWidthRaw(gridWidth * ScreenConfiguration.getTileWidth());
+            }
+        });
     }
 
     /**
@@ -185,11 +235,15 @@ public abstract class Control implements IControl, OnTouchListener
      * @param height how high of the control based in Grid units
      */
     @Override
-    public void setHeight(int height)
+    public void setHeight(final int height)
     {
-        if (height < 0) height = 0;
-        gridHeight = height;
-        setHeightRaw(gridHeight * ScreenConfiguration.getTileHeight());
+        icm.runOnGLThread(new Runnable() {
+            @Override
+            public void run() {
+                gridHeight = height < 0 ? 0 : height;
+                setHeightRaw(gridHeight * ScreenConfiguration.getTileHeight());
+            }
+        });
     }
 
     /**
@@ -197,9 +251,15 @@ public abstract class Control implements IControl, OnTouchListener
      * @param width exact with of the control to use
      */
     @Override
-    public void setWidthRaw(float width)
+    public void setWidthRaw(final float width)
     {
-        this.width = width;
+        icm.runOnGLThread(new Runnable() {
+            @Override
+            public void run() {
+                Control.this.width = width;
+                boundsChanged();
+            }
+        });
     }
 
     /**
@@ -207,9 +267,15 @@ public abstract class Control implements IControl, OnTouchListener
      * @param height exact width of the control to use
      */
     @Override
-    public void setHeightRaw(float height)
+    public void setHeightRaw(final float height)
     {
-        this.height = height;
+        icm.runOnGLThread(new Runnable() {
+            @Override
+            public void run() {
+                Control.this.height = height;
+                boundsChanged();
+            }
+        });
     }
 
     /**
@@ -217,9 +283,15 @@ public abstract class Control implements IControl, OnTouchListener
      * @param left exact left position
      */
     @Override
-    public void setLeftRaw(float left)
+    public void setLeftRaw(final float left)
     {
-        this.left = left;
+        icm.runOnGLThread(new Runnable() {
+            @Override
+            public void run() {
+                Control.this.left = left;
+                boundsChanged();
+            }
+        });
     }
 
     /**
@@ -227,9 +299,25 @@ public abstract class Control implements IControl, OnTouchListener
      * @param bottom exact bottom position
      */
     @Override
-    public void setBottomRaw(float bottom)
+    public void setBottomRaw(final float bottom)
     {
-        this.bottom = bottom;
+        icm.runOnGLThread(new Runnable() {
+            @Override
+            public void run() {
+                Control.this.bottom = bottom;
+                boundsChanged();
+            }
+        });
+    }
+
+    /**
+     * Called on the GL thread after our position or size changed.  Changes made before the
+     * surface exists only land after our first build, so we always rebuild on the next frame
+     */
+    private void boundsChanged()
+    {
+        icm.updateControlBounds(this);
+        setDirty(true);
     }
 
     /**
@@ -240,6 +328,7 @@ public abstract class Control implements IControl, OnTouchListener
     @Override
     public void setTextureID(int textureID) {
         glo[0].setTextureID(textureID);
+        textureLost = false;
     }
 
     /**
@@ -262,21 +351,96 @@ public abstract class Control implements IControl, OnTouchListener
         glo[0].setTextureOffset(u, v);
     }
 
+    /**
+     * Draw from a region of a texture atlas.  The texture, position and offset come from the
+     * region, and are picked up again whenever the atlas repacks or restores it.  If the region
+     * is freed the control stops following it and is not drawn until it gets another texture
+     * @param region region to draw from, null to stop following one
+     */
+    @Override
+    public void setTextureRegion(final TextureAtlas.Region region) {
+        //reading the texture ID may upload the atlas page, which needs the GL thread
+        icm.runOnGLThread(new Runnable() {
+            @Override
+            public void run() {
+                textureRegion = region;
+                if (region != null)
+                    applyTextureRegion();
+                setDirty(true);
+            }
+        });
+    }
+
+    /**
+     * Copy the texture and texture coordinates of our atlas region into our GL Object
+     */
+    private void applyTextureRegion() {
+        if (textureRegion.isFreed()) {
+            //the texture ID would be -1, keep the texture we have but stop drawing it
+            textureRegion = null;
+            textureLost = true;
+            return;
+        }
+        setTextureID(textureRegion.getTextureID());
+        setTexturePosition(textureRegion.getTextureX(), textureRegion.getTextureY());
+        setTextureOffset(textureRegion.getTextureWidth(), textureRegion.getTextureHeight());
+        textureRegionVersion = textureRegion.getVersion();
+    }
+
     /**
      * Draw the control to our active surface
      * @param mtrxProjView Our generated Projection/View matrix
      */
     @Override
     public void onDraw(float[] mtrxProjView) {
+        if (textureRegion != null && textureRegion.getVersion() != textureRegionVersion) {
+            //the atlas moved our region
+            applyTextureRegion();
+            dirty = true;
+        }
         if (dirty) {
             buildGLObjects();
         }
-        if (visible && builtTexture) {
-            for (GLObject glInstance : glo)
-                glInstance.onDraw(mtrxProjView);
+        if (visible && builtTexture && !textureLost) {
+            drawGLObjects(mtrxProjView);
         }
     }
 
+    /**
+     * Submit our GL Objects for drawing, only called when the control is visible and built
+     * @param mtrxProjView Our generated Projection/View matrix
+     */
+    protected void drawGLObjects(float[] mtrxProjView)
+    {
+        //each object is its own pass so backgrounds stay beneath text, the screen sets our depth
+        for (int i = 0; i < glo.length; i++)
+            ScreenConfiguration.renderQueue.submit(glo[i], layer, i);
+    }
+
+    /**
+     * The layer the control is drawn on, higher layers draw on top and are touched first
+     * @return layer between 0 and RenderQueue.MAX_LAYER
+     */
+    @Override
+    public int getLayer()
+    {
+        return layer;
+    }
+
+    /**
+     * Move the control to another layer, placing it on top of the controls already there
+     * @param layer layer between 0 and RenderQueue.MAX_LAYER
+     * @throws IllegalArgumentException
+     */
+    @Override
+    public void setLayer(int layer)
+    {
+        if (layer < 0 || layer > RenderQueue.MAX_LAYER)
+            throw new IllegalArgumentException("layer must be between 0 and " + RenderQueue.MAX_LAYER);
+        this.layer = layer;
+        icm.updateControlLayer(this);
+    }
+
     /**
      * When we change the size of our surface, readjust the size of the control based on the grid
      */
@@ -300,9 +464,23 @@ public abstract class Control implements IControl, OnTouchListener
     @Override
     public void onSurfaceCreated()
     {
+        //any buffer objects belonged to the previous GL context
+        for (GLObject glInstance : glo)
+            glInstance.invalidateBufferObjects();
         buildGLObjects();
     }
 
+    /**
+     * Free our buffer objects, the control is not drawn again until it is rebuilt
+     */
+    @Override
+    public void dispose()
+    {
+        for (GLObject glInstance : glo)
+            glInstance.releaseBufferObjects();
+        builtTexture = false;
+    }
+
     /**
      * Reposition our control based on the new grid coordinates
      * @param newLeft new left most position based on our grid
@@ -310,9 +488,7 @@ public abstract class Control implements IControl, OnTouchListener
      */
     @Override
     public void move(float newLeft, float newBottom) {
-        setLeftRaw(newLeft * ScreenConfiguration.getTileWidth());
-        setBottomRaw(newBottom * ScreenConfiguration.getTileHeight());
-        buildGLObjects();
+        moveRaw(newLeft * ScreenConfiguration.getTileWidth(), newBottom * ScreenConfiguration.getTileHeight());
     }
 
     /**
@@ -322,11 +498,20 @@ public abstract class Control implements IControl, OnTouchListener
      */
     @Override
     public void moveRaw(float newLeft, float newBottom) {
-        setLeftRaw(newLeft);
-        setBottomRaw(newBottom);
-        buildGLObjects();
+        //moves usually come from touch handlers on the UI thread while the GL thread may be
+        //reading our position, so the whole move is applied on the GL thread.  Several moves
+        //before the next frame only need the last one applied
+        synchronized (moveLock) {
+            pendingLeft = newLeft;
+            pendingBottom = newBottom;
+            if (moveQueued)
+                return;
+            moveQueued = true;
+        }
+        icm.runOnGLThread(applyMove);
     }
 
+
     /**
      * Basic onTouch handling to ensure we don't handle touch events for disabled / invisible controls
      * @param event the touch event that occurred
@@ -345,8 +530,14 @@ public abstract class Control implements IControl, OnTouchListener
      * @param visible true to display the control, false to hie
      */
     @Override
-    public void setVisibility(boolean visible) {
-        this.visible = visible;
+    public void setVisibility(final boolean visible) {
+        icm.runOnGLThread(new Runnable() {
+            @Override
+            public void run() {
+                Control.this.visible = visible;
+                icm.requestRender();
+            }
+        });
     }
 
     /**
@@ -401,6 +592,8 @@ public abstract class Control implements IControl, OnTouchListener
     public void setDirty(boolean dirty)
     {
         this.dirty = dirty;
+        if (dirty)
+            icm.requestRender();
     }
 
 }
@@ -21,6 +21,7 @@ import android.view.MotionEvent;
 import java.util.ArrayList;
 import java.util.List;
 
+import ca.coffeeshopstudio.icegl.gl.RenderQueue;
 import ca.coffeeshopstudio.icegl.gl.ScreenConfiguration;
 
 /**
@@ -30,6 +31,7 @@ public class Dialog extends Label {
     final int MARGIN = 16;
 
     private List<IControl> controls = new ArrayList<>();
+    private List<IControl> touched = new ArrayList<>(); //reused by every touch
 
     private Button positive;
     private Button negative;
@@ -49,9 +51,6 @@ public class Dialog extends Label {
         setHeight(ScreenConfiguration.getVerticalTiles() - 2);
 
         positive = new Button(icm);
-        positive.setLeftRaw(getLeft() + MARGIN);
-        positive.setBottomRaw(getBottom() + MARGIN);
-        positive.setWidthRaw((getWidth() / 2) - (MARGIN * 2));
         positive.setText("OK");
         positive.onTouchListener = new OnTouchListener() {
             @Override
@@ -65,9 +64,6 @@ public class Dialog extends Label {
         };
 
         negative = new Button(icm);
-        negative.setLeftRaw(positive.getLeft() + positive.getWidth() + MARGIN);
-        negative.setBottomRaw(getBottom() + MARGIN);
-        negative.setWidthRaw((getWidth() / 2) - (MARGIN * 2));
         negative.setText("Cancel");
         negative.onTouchListener = new OnTouchListener() {
             @Override
@@ -83,6 +79,19 @@ public class Dialog extends Label {
         controls.add(positive);
         controls.add(negative);
 
+        //our size is only applied on the GL thread, so the buttons are laid out there after it
+        icm.runOnGLThread(new Runnable() {
+            @Override
+            public void run() {
+                layoutButtons();
+            }
+        });
+
+        //draw above every regular control, buttons included
+        setLayer(RenderQueue.LAYER_DIALOG);
+        positive.setLayer(RenderQueue.LAYER_DIALOG + 1);
+        negative.setLayer(RenderQueue.LAYER_DIALOG + 1);
+
         setTextJustification(CENTER_JUSTIFY);
         setText("Are you sure?");
     }
@@ -123,6 +132,19 @@ public class Dialog extends Label {
         negative.setText(text);
     }
 
+    /**
+     * Place the buttons along the bottom of the dialog, called on the GL thread
+     */
+    private void layoutButtons() {
+        positive.setLeftRaw(getLeft() + MARGIN);
+        positive.setBottomRaw(getBottom() + MARGIN);
+        positive.setWidthRaw((getWidth() / 2) - (MARGIN * 2));
+
+        negative.setLeftRaw(positive.getLeft() + positive.getWidth() + MARGIN);
+        negative.setBottomRaw(getBottom() + MARGIN);
+        negative.setWidthRaw((getWidth() / 2) - (MARGIN * 2));
+    }
+
     private void close() {
         setEnabled(false);
         setVisibility(false);
@@ -148,12 +170,10 @@ public class Dialog extends Label {
      * @return true on completion
      */
     public boolean onTouch(MotionEvent event, float posX, float posY) {
-        for (IControl control : controls) {
-            if (posX > control.getLeft() &&
-                    posX < control.getLeft() + control.getWidth() &&
-                    posY < control.getBottom() + control.getHeight() &&
-                    posY > control.getBottom()
-                    && control.isEnabled()) {
+        touched.clear();
+        icm.findControlsAt(posX, posY, touched);
+        for (IControl control : touched) {
+            if (control.isEnabled() && controls.contains(control)) {
                 control.onTouch(event);
             }
         }
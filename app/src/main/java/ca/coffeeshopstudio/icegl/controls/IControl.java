@@ -18,6 +18,12 @@ package ca.coffeeshopstudio.icegl.controls;
 
 import android.view.MotionEvent;
 
+import ca.coffeeshopstudio.icegl.gl.TextureAtlas;
+
+/**
+ * A control placed on a screen.  Setters may be called from any thread, changes made off the GL
+ * thread are applied on it before the next frame, so the getters only reflect them from then on
+ */
 public interface IControl
 {
     /**
@@ -118,6 +124,13 @@ public interface IControl
      */
     void setTextureOffset(float u, float v);
 
+    /**
+     * Draw from a region of a texture atlas, following it if the atlas moves it.  Once the
+     * region is freed the control is hidden until it is given another texture
+     * @param region region to draw from, null to stop following one
+     */
+    void setTextureRegion(TextureAtlas.Region region);
+
     /**
      * When we change the size of our surface, readjust the size of the control based on the grid
      */
@@ -167,6 +180,12 @@ public interface IControl
      */
     void onSurfaceCreated();
 
+    /**
+     * Release the buffer objects and shared textures the control holds.  Called on the GL thread
+     * once the control is removed from its screen or the screen is torn down
+     */
+    void dispose();
+
     /**
      * Returns whether or not the control is enabled or disabled
      * @return enabled status
@@ -179,6 +198,20 @@ public interface IControl
      */
     boolean isVisible();
 
+    /**
+     * The layer the control is drawn on.  Higher layers draw on top and receive touches first,
+     * within a layer the control added last is on top of the controls it overlaps.  Controls
+     * that don't overlap may be drawn in any order so they can share batches
+     * @return layer between 0 and RenderQueue.MAX_LAYER
+     */
+    int getLayer();
+
+    /**
+     * Move the control to another layer, placing it on top of the controls already there
+     * @param layer layer between 0 and RenderQueue.MAX_LAYER, see the RenderQueue LAYER constants
+     */
+    void setLayer(int layer);
+
     /**
      * If the control has been changed, set this to true to force it to redraw
      * @param dirty if true, the control will be rebuilt
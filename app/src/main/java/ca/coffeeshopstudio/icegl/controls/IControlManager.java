@@ -16,9 +16,13 @@
 
 package ca.coffeeshopstudio.icegl.controls;
 
+import android.app.Activity;
 import android.content.Context;
 
+import java.util.List;
+
 import ca.coffeeshopstudio.icegl.gl.GLTexture;
+import ca.coffeeshopstudio.icegl.gl.RectGL;
 
 public interface IControlManager
 {
@@ -28,6 +32,32 @@ public interface IControlManager
      */
     void addControl(IControl control);
 
+    /**
+     * Take a control off the parent and dispose of it on the GL thread
+     * @param control the control we are removing
+     */
+    void removeControl(IControl control);
+
+    /**
+     * Tell the parent a control moved or resized so touches keep finding it
+     * @param control the control that changed
+     */
+    void updateControlBounds(IControl control);
+
+    /**
+     * Tell the parent a control changed layer so it can reorder drawing and touches
+     * @param control the control that changed
+     */
+    void updateControlLayer(IControl control);
+
+    /**
+     * Collect every control under a point, in the order they would receive the touch
+     * @param x horizontal position
+     * @param y vertical position
+     * @param out list the controls are added to
+     */
+    void findControlsAt(float x, float y, List<IControl> out);
+
     /**
      * Retrieve the active context
      */
@@ -39,9 +69,35 @@ public interface IControlManager
      */
     GLTexture getControlTexture();
 
+    /**
+     * The part of the world currently visible on the screen, after any screen adjustment
+     * @return visible area
+     */
+    RectGL getViewport();
+
+    /**
+     * Run a command on the GL thread.  Anything that changes a control from another thread,
+     * such as a UI callback, should go through here so it never races the frame being drawn.
+     * Commands posted from the GL thread itself run straight away
+     * @param command work to run
+     */
+    void runOnGLThread(Runnable command);
+
+    /**
+     * Ask for another frame to be drawn, needed when the screen renders on demand.  Controls
+     * call this when they change, animations call it every frame they are running
+     */
+    void requestRender();
+
+    /**
+     * How far between the last fixed update and the next one the frame being drawn is
+     * @return alpha between 0 and 1
+     */
+    float getInterpolationAlpha();
+
     /**
      * Retrieves the attached activity
      * @return current activity
      */
-    Context getActivity();
+    Activity getActivity();
 }
@@ -17,11 +17,10 @@
 package ca.coffeeshopstudio.icegl.controls;
 
 import ca.coffeeshopstudio.icegl.gl.GLTexture;
+import ca.coffeeshopstudio.icegl.gl.RenderQueue;
 
 public class Image extends Control
 {
-    //The attached control manager
-    protected IControlManager icm;
     private String imageName;
     private float width = 0.0f;
     private float height = 0.0f;
@@ -33,12 +32,11 @@ public class Image extends Control
     public Image(IControlManager icm)
     {
         super(icm);
-        this.icm = icm;
-        icm.addControl(this);
         //defaults to full size sprite
         setTexturePosition(0, 0);
         setTextureOffset(1f, 1f);
         enabled = false; //prevents overriding clicks
+        setLayer(RenderQueue.LAYER_BACKGROUND); //images are usually backdrops
     }
 
     /**
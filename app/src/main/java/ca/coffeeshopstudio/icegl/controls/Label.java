@@ -16,13 +16,16 @@
 
 package ca.coffeeshopstudio.icegl.controls;
 
-import android.graphics.Bitmap;
 import android.graphics.Rect;
 
 import ca.coffeeshopstudio.icegl.gl.GLColor;
 import ca.coffeeshopstudio.icegl.gl.GLText;
-import ca.coffeeshopstudio.icegl.gl.GLTexture;
+import ca.coffeeshopstudio.icegl.gl.GlyphAtlas;
 import ca.coffeeshopstudio.icegl.gl.ScreenConfiguration;
+import ca.coffeeshopstudio.icegl.gl.TextRasterizer;
+import ca.coffeeshopstudio.icegl.gl.TextTextureCache;
+import ca.coffeeshopstudio.icegl.programs.DistanceFieldProgram;
+import ca.coffeeshopstudio.icegl.programs.Program;
 
 public class Label extends Control
 {
@@ -31,8 +34,10 @@ public class Label extends Control
     public static final int CENTER_JUSTIFY = 1;
     public static final int RIGHT_JUSTIFY = 2;
 
-    //The attached control manager
-    protected IControlManager icm;
+    //How the text is turned into something we can draw
+    public static final int TEXT_BITMAP = 0; //the whole string rasterized into its own texture
+    public static final int TEXT_GLYPHS = 1; //one quad per character from a shared glyph atlas
+    public static final int TEXT_DISTANCE_FIELD = 2; //glyph quads from one distance field atlas per font
 
     //Defaults
     protected final String DEFAULT_FONT = "font.ttf";
@@ -45,8 +50,13 @@ public class Label extends Control
 
     private String font = DEFAULT_FONT;
     private int textJustification = LEFT_JUSTIFY;
+    private int textMode = TEXT_GLYPHS;
 
-    private GLTexture fontTexture;
+    private TextTextureCache.Entry textTexture; //shared with every label showing the same text
+    private boolean asyncText = true;
+    private String pendingKey; //text being rasterized in the background, if any
+    private GlyphAtlas glyphAtlas; //set while the current text is drawn from an atlas
+    private float glyphScale = 1; //font size divided by the size of the atlas
 
     protected float textLeft = 0;
     protected float textBottom = 0;
@@ -60,7 +70,6 @@ public class Label extends Control
     public Label(IControlManager icm)
     {
         super(icm);
-        this.icm = icm;
         setGloCount(2); //add an object to account for the text
         setLeftRaw(1);
         setBottomRaw(1);
@@ -70,43 +79,85 @@ public class Label extends Control
     @Override
     public void buildGLObjects()
     {
-        //Build a texture with the font and string message we want to use
-        if (!text.isEmpty())
+        glyphAtlas = null;
+        Program textProgram = ScreenConfiguration.imageProgram;
+        if (!text.isEmpty() && textMode != TEXT_BITMAP)
         {
             try
             {
-                Bitmap bmp = GLText.buildTextBitmap(icm.getContext(), getText(), font, fontSize, getColor(), underline);
-                //get the dimensions of the generated font texture
-                dimensions = GLText.getDimensions();
-
-                textMessageHeight = dimensions.height();
-
-                textBottom = glo[0].getBottom();
+                GlyphAtlas atlas;
+                if (textMode == TEXT_DISTANCE_FIELD)
+                {
+                    atlas = GlyphAtlas.getDistanceField(icm.getContext(), font);
+                    glyphScale = fontSize / atlas.getFontSize();
+                } else
+                {
+                    atlas = GlyphAtlas.get(icm.getContext(), font, fontSize, getColor());
+                    glyphScale = 1;
+                }
+                //anything the atlas can't hold falls back to a bitmap of the whole string
+                if (atlas.canDraw(text))
+                {
+                    glyphAtlas = atlas;
+                    if (atlas.isDistanceField())
+                        textProgram = DistanceFieldProgram.get(getColor());
+                    dimensions = new Rect(0, 0, (int) Math.ceil(atlas.measure(text) * glyphScale),
+                            (int) Math.ceil(atlas.getLineHeight() * glyphScale));
+                    textMessageHeight = dimensions.height();
+                    positionText();
+                    //the quads themselves are laid out in generateGeometry
+                }
+            } catch (Exception e)
+            {
+                glyphAtlas = null;
+                textProgram = ScreenConfiguration.imageProgram;
+            }
+        }
+        glo[1].setProgram(textProgram);
 
-                switch (getTextJustification())
+        if (text.isEmpty() || glyphAtlas != null)
+        {
+            //no bitmap of ours is shown any more
+            TextTextureCache.release(textTexture);
+            textTexture = null;
+            pendingKey = null;
+            if (text.isEmpty())
+                hideText();
+        } else
+        {
+            try
+            {
+                //Get a texture with the font and string message we want to use, rasterized only if
+                //no other label already shows the same text
+                String key = TextTextureCache.key(getText(), font, fontSize, getColor(), underline);
+                if (textTexture == null || !textTexture.isValid() || !textTexture.getKey().equals(key))
                 {
-                    case CENTER_JUSTIFY:
-                        textLeft = glo[0].getLeft() + (getWidth() / 2) - (dimensions.width() / 2);
-                        textBottom = glo[0].getBottom() + (glo[0].getHeight() / 2) - (dimensions.height() / 2);
-                        break;
-                    case LEFT_JUSTIFY:
-                        textLeft = glo[0].getLeft();//+ (glo[0].getWidth() / 2) - (dimensions.width() / 2);
-                        break;
-                    case RIGHT_JUSTIFY:
-                        textLeft = glo[0].getLeft() + glo[0].getWidth() - dimensions.width();
-                        break;
+                    TextTextureCache.Entry entry = TextTextureCache.acquire(key);
+                    if (entry == null && !asyncText)
+                        entry = TextTextureCache.acquire(icm.getContext(), getText(), font, fontSize, getColor(), underline);
+                    if (entry != null)
+                        showTexture(entry);
+                    else if (!key.equals(pendingKey))
+                        requestText(key); //we keep showing the old text until it arrives
                 }
 
-                //Create the texture and build our globject based on it
-                if (fontTexture != null)
-                    fontTexture.rebuildTexture(bmp);
-                else
-                   fontTexture = new GLTexture(bmp, 0, 0, 0);
-                setGlObjectDimensions(glo[1], textLeft, textBottom, dimensions.width(), dimensions.height(), getScale());
-                glo[1].setTextureID(fontTexture.getTextureID());
-                glo[1].setTexture(0, 0);
-                glo[1].setTextureOffset(1, 1);
-                bmp.recycle(); //clean up our bitmap
+                if (textTexture != null && textTexture.isValid())
+                {
+                    //get the dimensions of the generated font texture
+                    dimensions = textTexture.getDimensions();
+
+                    textMessageHeight = dimensions.height();
+
+                    positionText();
+
+                    //build our globject based on the texture
+                    glo[1].setCloneCount(1);
+                    setGlObjectDimensions(glo[1], textLeft, textBottom, dimensions.width(), dimensions.height(), getScale());
+                    glo[1].setTextureID(textTexture.getTexture().getTextureID());
+                    glo[1].setTexture(0, 0);
+                    glo[1].setTextureOffset(1, 1);
+                } else
+                    hideText();
             } catch (Exception e)
             {
                 dimensions = new Rect(0,0,0,0);
@@ -115,6 +166,106 @@ public class Label extends Control
         super.buildGLObjects();
     }
 
+    @Override
+    protected void generateGeometry()
+    {
+        if (glyphAtlas == null)
+        {
+            super.generateGeometry();
+            return;
+        }
+
+        setGlObjectDimensions(glo[0], getLeft(), getBottom(), getWidth(), getHeight(), getScale());
+        glo[0].generateVertices();
+        glo[0].generateTextures();
+        glyphAtlas.layout(text, textLeft, textBottom + glyphAtlas.getDescent() * glyphScale, glyphScale, underline,
+                glo[1]);
+    }
+
+    @Override
+    public void dispose()
+    {
+        super.dispose();
+        TextTextureCache.release(textTexture);
+        textTexture = null;
+        pendingKey = null; //text still being rasterized for us is thrown away
+    }
+
+    /**
+     * Start showing a texture, releasing the one we showed before
+     * @param entry acquired texture
+     */
+    private void showTexture(TextTextureCache.Entry entry)
+    {
+        //released after acquiring so unchanged text keeps its texture
+        TextTextureCache.release(textTexture);
+        textTexture = entry;
+        pendingKey = null;
+    }
+
+    /**
+     * Rasterize our text in the background, rebuilding once it arrives
+     * @param key cache key of the text
+     */
+    private void requestText(final String key)
+    {
+        pendingKey = key;
+        TextRasterizer.rasterize(icm, getText(), font, fontSize, getColor(), underline, new TextRasterizer.Callback()
+        {
+            @Override
+            public void onRasterized(GLText.TextBitmap result)
+            {
+                if (!key.equals(pendingKey))
+                {
+                    //the text changed again while this one was being drawn
+                    if (result != null)
+                        result.bitmap.recycle();
+                    return;
+                }
+                if (result == null)
+                {
+                    pendingKey = null;
+                    return;
+                }
+                showTexture(TextTextureCache.acquire(key, result));
+                setDirty(true);
+            }
+        });
+    }
+
+    /**
+     * Draw no text, for when there is none or it is still on its way
+     */
+    private void hideText()
+    {
+        dimensions = new Rect(0,0,0,0);
+        textMessageHeight = 0;
+        glo[1].setCloneCount(1);
+        setGlObjectDimensions(glo[1], glo[0].getLeft(), glo[0].getBottom(), 0, 0, getScale());
+    }
+
+    /**
+     * Work out where the text starts based on the justification and the size of the text
+     */
+    private void positionText()
+    {
+        textBottom = glo[0].getBottom();
+
+        switch (getTextJustification())
+        {
+            case CENTER_JUSTIFY:
+                textLeft = glo[0].getLeft() + (getWidth() / 2) - (dimensions.width() / 2);
+                textBottom = glo[0].getBottom() + (glo[0].getHeight() / 2) - (dimensions.height() / 2);
+                break;
+            case LEFT_JUSTIFY:
+                textLeft = glo[0].getLeft();//+ (glo[0].getWidth() / 2) - (dimensions.width() / 2);
+                break;
+            case RIGHT_JUSTIFY:
+                textLeft = glo[0].getLeft() + glo[0].getWidth() - dimensions.width();
+                break;
+        }
+    }
+
     /**
      * Returns the height of the text string
      * @return height of the text
@@ -137,12 +288,18 @@ public class Label extends Control
      * Set the text to display in the label
      * @param text text to show
      */
-    public void setText(String text)
+    public void setText(final String text)
     {
-        if (text == null)
-            text = "";
-        this.text = text;
-        setDirty(true);
+        //the GL thread reads the text while rebuilding, so it only changes there
+        icm.runOnGLThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Label.this.text = text == null ? "" : text;
+                setDirty(true);
+            }
+        });
     }
 
     /**
@@ -226,6 +383,67 @@ public class Label extends Control
         this.font = font;
     }
 
+    /**
+     * Returns how the text is drawn
+     * @return TEXT_GLYPHS, TEXT_DISTANCE_FIELD or TEXT_BITMAP
+     */
+    public int getTextMode()
+    {
+        return textMode;
+    }
+
+    /**
+     * Choose how the text is drawn.  Glyphs share one atlas per font, size and colour so
+     * changing the text only rewrites vertices, which suits counters and timers.  A bitmap
+     * rasterizes the whole string again on every change.  A distance field draws every size
+     * and colour of a font from one atlas and stays sharp when scaled
+     * @param textMode TEXT_GLYPHS, TEXT_DISTANCE_FIELD or TEXT_BITMAP
+     * @throws IllegalArgumentException
+     */
+    public void setTextMode(final int textMode)
+    {
+        if (textMode != TEXT_GLYPHS && textMode != TEXT_DISTANCE_FIELD && textMode != TEXT_BITMAP)
+            throw new IllegalArgumentException("Text mode must be TEXT_GLYPHS, TEXT_DISTANCE_FIELD or TEXT_BITMAP");
+        //the GL thread picks how to rebuild and draw from the mode
+        icm.runOnGLThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Label.this.textMode = textMode;
+                setDirty(true);
+            }
+        });
+    }
+
+    /**
+     * Returns whether text is rasterized in the background
+     * @return true if rasterizing in the background
+     */
+    public boolean isAsyncText()
+    {
+        return asyncText;
+    }
+
+    /**
+     * Choose whether text drawn as a bitmap is rasterized in the background.  In the background
+     * a long string can't hold up a frame, but new text shows up a frame or two late, the old
+     * text staying until then
+     * @param asyncText true to rasterize in the background
+     */
+    public void setAsyncText(final boolean asyncText)
+    {
+        icm.runOnGLThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Label.this.asyncText = asyncText;
+                setDirty(true);
+            }
+        });
+    }
+
     public int getTextMessageHeight()
     {
         return textMessageHeight;
@@ -17,6 +17,7 @@
 package ca.coffeeshopstudio.icegl.controls;
 
 import ca.coffeeshopstudio.icegl.gl.GLTexture;
+import ca.coffeeshopstudio.icegl.gl.RenderQueue;
 
 public class Sprite extends Image {
     /**
@@ -26,6 +27,7 @@ public class Sprite extends Image {
      */
     public Sprite(IControlManager icm) {
         super(icm);
+        setLayer(RenderQueue.LAYER_SPRITES); //keep sprites above the backdrops
     }
 
     /**
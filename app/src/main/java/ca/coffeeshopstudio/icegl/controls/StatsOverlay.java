@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.coffeeshopstudio.icegl.controls;
+
+import android.graphics.Bitmap;
+
+import java.util.Locale;
+
+import ca.coffeeshopstudio.icegl.gl.FrameStats;
+import ca.coffeeshopstudio.icegl.gl.GLColor;
+import ca.coffeeshopstudio.icegl.gl.GLText;
+import ca.coffeeshopstudio.icegl.gl.GLTexture;
+import ca.coffeeshopstudio.icegl.gl.RectGL;
+import ca.coffeeshopstudio.icegl.gl.RenderQueue;
+import ca.coffeeshopstudio.icegl.gl.ScreenConfiguration;
+
+/**
+ * Shows the rolling frame statistics in the top left corner of the screen, above everything
+ * else.  The text is only rasterized a couple of times a second, those rasterizations show
+ * up in the numbers it displays.  It stays put when the screen adjustment scrolls the world
+ * and never takes touches.  GLScreen creates it, see GLScreen.setStatsVisible
+ */
+public class StatsOverlay extends Control
+{
+    private static final String FONT = "font.ttf";
+    private static final int DEFAULT_SIZE = 24;
+    private static final long REFRESH_NANOS = 500000000L; //redraw the text twice a second
+    private static final int LINES = 3;
+    private static final float MARGIN = 4;
+
+    private final GLTexture[] lineTextures = new GLTexture[LINES];
+    private final float[] lineWidths = new float[LINES];
+    private final float[] lineHeights = new float[LINES];
+    private int fontSize = DEFAULT_SIZE;
+    private GLColor color = GLColor.White;
+    private long lastRefresh = 0;
+    private boolean refreshed = false;
+
+    /**
+     * Default constructor
+     * @param icm parent to attach to
+     */
+    public StatsOverlay(IControlManager icm)
+    {
+        super(icm);
+        enabled = false;
+        setLayer(RenderQueue.MAX_LAYER);
+    }
+
+    /**
+     * Set the font size
+     * @param fontSize size of the font
+     */
+    public void setFontSize(int fontSize)
+    {
+        if (fontSize > 0)
+            this.fontSize = fontSize;
+        refreshed = false;
+    }
+
+    /**
+     * Sets the font to the passed in GLColor object
+     * @param color the color to use
+     */
+    public void setColor(GLColor color)
+    {
+        if (color == null)
+            color = GLColor.White;
+        this.color = color;
+        refreshed = false;
+    }
+
+    @Override
+    public void onSurfaceCreated()
+    {
+        //our textures belonged to the previous GL context
+        for (int i = 0; i < LINES; i++)
+            lineTextures[i] = null;
+        refreshed = false;
+        super.onSurfaceCreated();
+    }
+
+    @Override
+    public void dispose()
+    {
+        for (int i = 0; i < LINES; i++)
+        {
+            if (lineTextures[i] != null)
+                lineTextures[i].delete();
+            lineTextures[i] = null;
+        }
+        refreshed = false;
+        super.dispose();
+    }
+
+    @Override
+    protected void drawGLObjects(float[] mtrxProjView)
+    {
+        long now = System.nanoTime();
+        if (!refreshed || now - lastRefresh >= REFRESH_NANOS)
+        {
+            refresh(FrameStats.getSnapshot());
+            lastRefresh = now;
+            refreshed = true;
+        }
+
+        //pinned to the visible corner rather than the world
+        RectGL viewport = icm.getViewport();
+        float left = viewport.left + MARGIN;
+        float top = viewport.bottom + viewport.height - MARGIN;
+        for (int i = 0; i < LINES; i++)
+        {
+            if (lineTextures[i] == null)
+                continue;
+            top -= lineHeights[i];
+            ScreenConfiguration.renderQueue.submitQuad(ScreenConfiguration.imageProgram, lineTextures[i].getTextureID(),
+                    getLayer(), left, top, lineWidths[i], lineHeights[i], 0, 0, 1, 1);
+        }
+    }
+
+    /**
+     * Rasterize the statistics into our line textures
+     * @param stats numbers to show
+     */
+    private void refresh(FrameStats.Snapshot stats)
+    {
+        setLine(0, String.format(Locale.US, "frame %.1f avg  %.1f p95  %.1f max  %.1f cpu ms",
+                stats.averageFrameMillis, stats.p95FrameMillis, stats.maxFrameMillis, stats.averageCpuMillis));
+        setLine(1, String.format(Locale.US, "draws %.1f  quads %.0f  uploads %.2f",
+                stats.drawCalls, stats.quads, stats.textureUploads));
+        setLine(2, String.format(Locale.US, "rebuilds %.2f  text %.2f per frame",
+                stats.rebuilds, stats.rasterizations));
+    }
+
+    /**
+     * Replace the texture of one line of text
+     * @param line which line we are setting
+     * @param text what it says
+     */
+    private void setLine(int line, String text)
+    {
+        Bitmap bmp = GLText.buildTextBitmap(icm.getContext(), text, FONT, fontSize, color);
+        //the texture recycles the bitmap once uploaded
+        lineWidths[line] = bmp.getWidth();
+        lineHeights[line] = bmp.getHeight();
+        if (lineTextures[line] != null)
+            lineTextures[line].rebuildTexture(bmp);
+        else
+            lineTextures[line] = new GLTexture(bmp, 0, 0, 0);
+    }
+}
@@ -61,7 +61,7 @@ public class Textbox extends Label
             switch (event.getAction())
             {
                 case MotionEvent.ACTION_UP:
-                    getUserInput();
+                    showUserInput();
                     return true;
             }
         }
@@ -77,6 +77,21 @@ public class Textbox extends Label
         this.prompt = prompt;
     }
 
+    /**
+     * Touches arrive on the GL thread but the popup window has to be shown from the UI thread
+     */
+    private void showUserInput()
+    {
+        icm.getActivity().runOnUiThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                getUserInput();
+            }
+        });
+    }
+
     /**
      * Controls entering text for the user via a popup window
      */
@@ -91,8 +106,17 @@ public class Textbox extends Label
                 {
                     public void onClick(DialogInterface dialog, int id)
                     {
-                        text = nameEntry.getText().toString();
-                        setDirty(true);
+                        final String entered = nameEntry.getText().toString();
+                        //we are on the UI thread, let the GL thread swap the text in
+                        icm.runOnGLThread(new Runnable()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                text = entered;
+                                setDirty(true);
+                            }
+                        });
                     }
                 })
                 .setNegativeButton(android.R.string.cancel, new DialogInterface.OnClickListener()
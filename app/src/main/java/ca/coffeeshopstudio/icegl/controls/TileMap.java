@@ -0,0 +1,395 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.coffeeshopstudio.icegl.controls;
+
+import ca.coffeeshopstudio.icegl.gl.GLObject;
+import ca.coffeeshopstudio.icegl.gl.GLTexture;
+import ca.coffeeshopstudio.icegl.gl.RectGL;
+import ca.coffeeshopstudio.icegl.gl.RenderQueue;
+import ca.coffeeshopstudio.icegl.gl.ScreenConfiguration;
+
+/**
+ * A grid of tiles drawn from a single texture atlas.  The grid is split into square chunks,
+ * each one a GLObject with a clone per tile kept in a buffer object, so changing a tile only
+ * re-uploads that tile and chunks outside the viewport are never drawn.  Row 0 is the top row
+ * of the map, the same way the rows read when the grid is written out in code.
+ */
+public class TileMap extends Control
+{
+    public static final int EMPTY_TILE = -1; //nothing is drawn for this tile
+    public static final int DEFAULT_CHUNK_SIZE = 16; //tiles along each side of a chunk
+
+    private int[] tiles = new int[0]; //atlas index of every tile, row by row, GL thread only
+    private int columns = 0;
+    private int rows = 0;
+    //the map as callers on any thread last set it, the GL thread catches up before each frame
+    private final Object requestLock = new Object();
+    private int[] requestedTiles = new int[0];
+    private int requestedColumns = 0;
+    private int requestedRows = 0;
+    private float tileWidth = 0;
+    private float tileHeight = 0;
+
+    private final int chunkSize;
+    private int chunkColumns = 0;
+    private int chunkRows = 0;
+    private RectGL[] chunkBounds = new RectGL[0];
+
+    private GLTexture atlas;
+    //used to load the atlas on surface creation when we are only given its name
+    private String atlasName;
+    private float spriteSize;
+    private float atlasWidth;
+    private float atlasHeight;
+
+    /**
+     * Default constructor
+     * @param icm parent to attach to
+     */
+    public TileMap(IControlManager icm)
+    {
+        this(icm, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Create a tile map using chunks of the specified size
+     * @param icm parent to attach to
+     * @param chunkSize how many tiles along each side of a chunk
+     * @throws IllegalArgumentException
+     */
+    public TileMap(IControlManager icm, int chunkSize)
+    {
+        super(icm);
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("chunk size must be positive");
+        this.chunkSize = chunkSize;
+        enabled = false; //prevents overriding clicks
+        setLayer(RenderQueue.LAYER_BACKGROUND);
+    }
+
+    /**
+     * Assign the atlas every tile is drawn from.  Must be created on the GL thread
+     * @param atlas texture atlas holding the tiles
+     */
+    public void setAtlas(GLTexture atlas)
+    {
+        this.atlas = atlas;
+        this.atlasName = null;
+        setDirty(true);
+    }
+
+    /**
+     * Assign the atlas every tile is drawn from, it will be loaded when the surface is created
+     * @param atlasName image stored in the drawable resource folder
+     * @param spriteSize size of each tile inside the atlas
+     * @param width width of the atlas we designed for
+     * @param height height of the atlas we designed for
+     */
+    public void setAtlas(String atlasName, float spriteSize, float width, float height)
+    {
+        this.atlasName = atlasName;
+        this.spriteSize = spriteSize;
+        this.atlasWidth = width;
+        this.atlasHeight = height;
+    }
+
+    /**
+     * Assign the whole grid of tiles.  The grid is checked straight away and copied, it takes
+     * effect on the GL thread
+     * @param tiles atlas index of each tile, indexed [row][column] with row 0 at the top
+     * @param tileWidth how wide each tile is drawn
+     * @param tileHeight how tall each tile is drawn
+     * @throws IllegalArgumentException
+     */
+    public void setTiles(int[][] tiles, final float tileWidth, final float tileHeight)
+    {
+        if (tiles == null || tiles.length == 0 || tiles[0].length == 0)
+            throw new IllegalArgumentException("tile map is empty");
+        if (tileWidth <= 0 || tileHeight <= 0)
+            throw new IllegalArgumentException("tile size must be positive");
+
+        final int newRows = tiles.length;
+        final int newColumns = tiles[0].length;
+        final int[] flat = new int[newRows * newColumns];
+        for (int row = 0; row < newRows; row++)
+        {
+            if (tiles[row].length != newColumns)
+                throw new IllegalArgumentException("row " + row + " has " + tiles[row].length + " tiles, expected " + newColumns);
+            System.arraycopy(tiles[row], 0, flat, row * newColumns, newColumns);
+        }
+        synchronized (requestLock)
+        {
+            requestedTiles = flat.clone();
+            requestedColumns = newColumns;
+            requestedRows = newRows;
+        }
+
+        //replacing the chunks deletes buffer objects the GL thread may be drawing
+        icm.runOnGLThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                TileMap.this.tiles = flat;
+                columns = newColumns;
+                rows = newRows;
+                TileMap.this.tileWidth = tileWidth;
+                TileMap.this.tileHeight = tileHeight;
+                setWidthRaw(newColumns * tileWidth);
+                setHeightRaw(newRows * tileHeight);
+
+                buildChunks();
+                setDirty(true);
+            }
+        });
+    }
+
+    /**
+     * Change a single tile.  Only the clone holding that tile is rewritten and re-uploaded
+     * @param column column of the tile
+     * @param row row of the tile, 0 being the top
+     * @param atlasIndex index of the sprite in the atlas, or EMPTY_TILE
+     * @throws IllegalArgumentException
+     */
+    public void setTile(final int column, final int row, final int atlasIndex)
+    {
+        synchronized (requestLock)
+        {
+            checkBounds(column, row);
+            requestedTiles[row * requestedColumns + column] = atlasIndex;
+        }
+        //the tile is written into a clone the GL thread may be uploading
+        icm.runOnGLThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (column >= columns || row >= rows)
+                    return; //the map shrank before the change reached us
+                tiles[row * columns + column] = atlasIndex;
+                if (atlas != null)
+                    writeTile(column, row);
+                icm.requestRender();
+            }
+        });
+    }
+
+    /**
+     * Returns the atlas index of a tile as last set, even if the change has not been drawn yet
+     * @param column column of the tile
+     * @param row row of the tile, 0 being the top
+     * @return index of the sprite in the atlas, or EMPTY_TILE
+     * @throws IllegalArgumentException
+     */
+    public int getTile(int column, int row)
+    {
+        synchronized (requestLock)
+        {
+            checkBounds(column, row);
+            return requestedTiles[row * requestedColumns + column];
+        }
+    }
+
+    /**
+     * How many tiles across the map is
+     * @return column count
+     */
+    public int getColumns()
+    {
+        synchronized (requestLock)
+        {
+            return requestedColumns;
+        }
+    }
+
+    /**
+     * How many tiles tall the map is
+     * @return row count
+     */
+    public int getRows()
+    {
+        synchronized (requestLock)
+        {
+            return requestedRows;
+        }
+    }
+
+    /**
+     * Returns the column under a horizontal position
+     * @param x horizontal position in the world
+     * @return column, or -1 if outside the map
+     */
+    public int getColumnAt(float x)
+    {
+        int column = (int) Math.floor((x - getLeft()) / tileWidth);
+        return (column >= 0 && column < columns) ? column : -1;
+    }
+
+    /**
+     * Returns the row under a vertical position
+     * @param y vertical position in the world
+     * @return row, or -1 if outside the map
+     */
+    public int getRowAt(float y)
+    {
+        int row = rows - 1 - (int) Math.floor((y - getBottom()) / tileHeight);
+        return (row >= 0 && row < rows) ? row : -1;
+    }
+
+    @Override
+    public void onSurfaceCreated()
+    {
+        if (atlasName != null)
+            atlas = new GLTexture(icm.getActivity(), atlasName, spriteSize, atlasWidth, atlasHeight);
+        super.onSurfaceCreated();
+    }
+
+    @Override
+    protected void generateGeometry()
+    {
+        if (atlas == null)
+            return;
+
+        for (int chunk = 0; chunk < glo.length; chunk++)
+            glo[chunk].setTextureID(atlas.getTextureID());
+
+        for (int row = 0; row < rows; row++)
+            for (int column = 0; column < columns; column++)
+                writeTile(column, row);
+
+        //the map may have moved, so the chunks did too
+        for (int chunk = 0; chunk < chunkBounds.length; chunk++)
+            setChunkBounds(chunk);
+    }
+
+    @Override
+    protected void drawGLObjects(float[] mtrxProjView)
+    {
+        if (atlas == null)
+            return;
+
+        RectGL viewport = icm.getViewport();
+        for (int chunk = 0; chunk < glo.length; chunk++)
+        {
+            if (intersects(chunkBounds[chunk], viewport))
+                ScreenConfiguration.renderQueue.submit(glo[chunk], getLayer(), 0);
+        }
+    }
+
+    /**
+     * Split the map into chunks, each with one clone per tile it covers
+     */
+    private void buildChunks()
+    {
+        chunkColumns = (columns + chunkSize - 1) / chunkSize;
+        chunkRows = (rows + chunkSize - 1) / chunkSize;
+        int chunkCount = chunkColumns * chunkRows;
+
+        //the old chunks may still own buffer objects
+        if (glo != null)
+            for (GLObject chunk : glo)
+                chunk.releaseBufferObjects();
+
+        setGloCount(chunkCount);
+        chunkBounds = new RectGL[chunkCount];
+        for (int chunk = 0; chunk < chunkCount; chunk++)
+        {
+            int chunkColumn = chunk % chunkColumns;
+            int chunkRow = chunk / chunkColumns;
+            int tilesAcross = Math.min(chunkSize, columns - chunkColumn * chunkSize);
+            int tilesDown = Math.min(chunkSize, rows - chunkRow * chunkSize);
+
+            glo[chunk].setStorageMode(GLObject.STORAGE_BUFFER_OBJECT);
+            glo[chunk].setCloneCount(tilesAcross * tilesDown);
+            chunkBounds[chunk] = new RectGL(0, 0, tilesAcross * tileWidth, tilesDown * tileHeight);
+            setChunkBounds(chunk);
+        }
+    }
+
+    /**
+     * Work out where a chunk sits in the world
+     * @param chunk index of the chunk
+     */
+    private void setChunkBounds(int chunk)
+    {
+        int chunkColumn = chunk % chunkColumns;
+        int chunkRow = chunk / chunkColumns;
+        int lastRow = Math.min(rows, (chunkRow + 1) * chunkSize) - 1;
+
+        RectGL bounds = chunkBounds[chunk];
+        bounds.left = getLeft() + chunkColumn * chunkSize * tileWidth;
+        bounds.bottom = getBottom() + (rows - 1 - lastRow) * tileHeight;
+    }
+
+    /**
+     * Rewrite the clone holding a tile
+     * @param column column of the tile
+     * @param row row of the tile, 0 being the top
+     */
+    private void writeTile(int column, int row)
+    {
+        int chunkColumn = column / chunkSize;
+        int chunkRow = row / chunkSize;
+        int chunk = chunkRow * chunkColumns + chunkColumn;
+        int tilesAcross = Math.min(chunkSize, columns - chunkColumn * chunkSize);
+        int clone = (row - chunkRow * chunkSize) * tilesAcross + (column - chunkColumn * chunkSize);
+
+        GLObject target = glo[chunk];
+        int atlasIndex = tiles[row * columns + column];
+        if (atlasIndex == EMPTY_TILE)
+        {
+            //collapse the quad to nothing so it covers no pixels
+            target.setCloneDimensions(clone, 0, 0, 0, 0);
+            target.setCloneTextureRegion(clone, 0, 0, 0, 0);
+            return;
+        }
+
+        float left = getLeft() + column * tileWidth;
+        float bottom = getBottom() + (rows - 1 - row) * tileHeight;
+        target.setCloneDimensions(clone, left, bottom, tileWidth, tileHeight);
+
+        int atlasColumns = Math.max(1, (int) atlas.getGridWith());
+        float u0 = (atlasIndex % atlasColumns) * atlas.getUratio();
+        float v0 = (atlasIndex / atlasColumns) * atlas.getVratio();
+        target.setCloneTextureRegion(clone, u0, v0, u0 + atlas.getUratio(), v0 + atlas.getVratio());
+    }
+
+    /**
+     * Make sure a tile is inside the map as callers last set it, called holding requestLock
+     * @param column column of the tile
+     * @param row row of the tile
+     * @throws IllegalArgumentException
+     */
+    private void checkBounds(int column, int row)
+    {
+        if (column < 0 || column >= requestedColumns || row < 0 || row >= requestedRows)
+            throw new IllegalArgumentException("tile " + column + "," + row + " is outside the "
+                    + requestedColumns + "x" + requestedRows + " map");
+    }
+
+    /**
+     * Returns whether two rectangles overlap
+     * @param a first rectangle
+     * @param b second rectangle
+     * @return true if any part of them overlaps
+     */
+    private static boolean intersects(RectGL a, RectGL b)
+    {
+        return a.left < b.left + b.width && b.left < a.left + a.width
+                && a.bottom < b.bottom + b.height && b.bottom < a.bottom + a.height;
+    }
+}
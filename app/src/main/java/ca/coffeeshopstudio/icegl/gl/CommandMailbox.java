@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.coffeeshopstudio.icegl.gl;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock free queue of work other threads hand to the GL thread.  Posting swaps a single atomic
+ * reference, so neither side ever blocks, and the GL thread runs everything posted so far at
+ * the start of the next frame.  Any number of threads may post, only the GL thread may drain.
+ */
+public class CommandMailbox
+{
+    /**
+     * A posted command and the link to the one after it
+     */
+    private static class Node
+    {
+        Runnable command;
+        volatile Node next;
+
+        Node(Runnable command)
+        {
+            this.command = command;
+        }
+    }
+
+    //producers append after the newest node, the consumer reads after the oldest
+    private final AtomicReference<Node> newest;
+    private Node oldest;
+
+    /**
+     * Create an empty mailbox
+     */
+    public CommandMailbox()
+    {
+        Node empty = new Node(null);
+        newest = new AtomicReference<>(empty);
+        oldest = empty;
+    }
+
+    /**
+     * Queue a command to run on the GL thread, safe to call from any thread
+     * @param command work to run
+     * @throws IllegalArgumentException
+     */
+    public void post(Runnable command)
+    {
+        if (command == null)
+            throw new IllegalArgumentException("command is null");
+        Node node = new Node(command);
+        Node previous = newest.getAndSet(node);
+        //publishing the link is what makes the command visible to drain
+        previous.next = node;
+    }
+
+    /**
+     * Run every command posted before the drain started.  Commands those commands post wait for
+     * the next drain so a command that keeps reposting itself can't stall the frame
+     * @return how many commands were run
+     */
+    public int drain()
+    {
+        Node last = newest.get();
+        int ran = 0;
+        while (oldest != last)
+        {
+            Node next = oldest.next;
+            if (next == null)
+                break; //a producer swapped in the node but hasn't linked it yet
+            oldest = next;
+            Runnable command = next.command;
+            next.command = null;
+            command.run();
+            ran++;
+        }
+        return ran;
+    }
+
+    /**
+     * Returns whether anything is waiting to run
+     * @return true if commands are queued
+     */
+    public boolean isEmpty()
+    {
+        return oldest.next == null;
+    }
+}
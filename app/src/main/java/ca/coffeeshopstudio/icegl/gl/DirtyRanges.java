@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.coffeeshopstudio.icegl.gl;
+
+/**
+ * Tracks which clones of a GLObject changed since the last upload as a short list of
+ * [first, last] ranges.  Touching the same or a neighbouring clone extends an existing range,
+ * so updating one tile costs O(1).  If too many separate ranges build up they are collapsed
+ * into a single span covering all of them.
+ */
+public class DirtyRanges
+{
+    private static final int MAX_RANGES = 8;
+
+    private final int[] first = new int[MAX_RANGES];
+    private final int[] last = new int[MAX_RANGES];
+    private int count = 0;
+
+    /**
+     * Record that a clone changed
+     * @param clone index of the clone
+     */
+    public void mark(int clone)
+    {
+        //most writes touch the clone we just marked
+        if (count > 0 && clone >= first[count - 1] - 1 && clone <= last[count - 1] + 1)
+        {
+            extend(count - 1, clone);
+            return;
+        }
+
+        for (int i = 0; i < count; i++)
+        {
+            if (clone >= first[i] - 1 && clone <= last[i] + 1)
+            {
+                extend(i, clone);
+                return;
+            }
+        }
+
+        if (count == MAX_RANGES)
+            collapse();
+
+        if (count > 0 && clone >= first[0] && clone <= last[0])
+            return;
+
+        first[count] = clone;
+        last[count] = clone;
+        count++;
+    }
+
+    /**
+     * Record that every clone up to the specified count changed
+     * @param clones number of clones
+     */
+    public void markAll(int clones)
+    {
+        if (clones <= 0)
+            return;
+        count = 1;
+        first[0] = 0;
+        last[0] = clones - 1;
+    }
+
+    /**
+     * Returns whether anything changed since the last clear
+     * @return true if at least one clone changed
+     */
+    public boolean isDirty()
+    {
+        return count > 0;
+    }
+
+    /**
+     * How many separate ranges we are tracking
+     * @return range count
+     */
+    public int getRangeCount()
+    {
+        return count;
+    }
+
+    /**
+     * First clone of the specified range
+     * @param range index of the range
+     * @return first changed clone
+     */
+    public int getFirst(int range)
+    {
+        return first[range];
+    }
+
+    /**
+     * Last clone of the specified range, inclusive
+     * @param range index of the range
+     * @return last changed clone
+     */
+    public int getLast(int range)
+    {
+        return last[range];
+    }
+
+    /**
+     * Forget every recorded change
+     */
+    public void clear()
+    {
+        count = 0;
+    }
+
+    /**
+     * Grow a range so it includes the clone
+     * @param range range to grow
+     * @param clone clone to include
+     */
+    private void extend(int range, int clone)
+    {
+        if (clone < first[range])
+            first[range] = clone;
+        if (clone > last[range])
+            last[range] = clone;
+    }
+
+    /**
+     * Merge every range into a single span
+     */
+    private void collapse()
+    {
+        int low = first[0];
+        int high = last[0];
+        for (int i = 1; i < count; i++)
+        {
+            low = Math.min(low, first[i]);
+            high = Math.max(high, last[i]);
+        }
+        first[0] = low;
+        last[0] = high;
+        count = 1;
+    }
+}
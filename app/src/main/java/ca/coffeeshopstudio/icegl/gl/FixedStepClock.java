@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.coffeeshopstudio.icegl.gl;
+
+/**
+ * Turns the uneven time between frames into a whole number of fixed size update steps.
+ * Time left over is carried to the next frame, and the fraction of a step it represents is
+ * the interpolation alpha used to draw between the last two updates.  To stop a slow device
+ * spiralling (each long frame running more updates, which makes the next frame longer still)
+ * a single frame never counts for more than a set amount of time or a set number of steps,
+ * anything beyond that is dropped.
+ */
+public class FixedStepClock
+{
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    private final long stepNanos;
+    private final int maxSteps;
+    private final long maxFrameNanos;
+
+    private long lastTime = 0;
+    private boolean started = false;
+    private long accumulator = 0;
+    private long frameNanos = 0;
+    private long droppedNanos = 0;
+
+    /**
+     * Create a clock
+     * @param stepSeconds length of one update step, in seconds
+     * @param maxSteps most update steps a single frame may run
+     * @param maxFrameSeconds longest a single frame may count for, in seconds
+     * @throws IllegalArgumentException
+     */
+    public FixedStepClock(float stepSeconds, int maxSteps, float maxFrameSeconds)
+    {
+        if (stepSeconds <= 0)
+            throw new IllegalArgumentException("step must be positive");
+        if (maxSteps <= 0)
+            throw new IllegalArgumentException("there must be at least one step per frame");
+        if (maxFrameSeconds < stepSeconds)
+            throw new IllegalArgumentException("a frame must be able to hold at least one step");
+        this.stepNanos = (long) (stepSeconds * NANOS_PER_SECOND);
+        this.maxSteps = maxSteps;
+        this.maxFrameNanos = (long) (maxFrameSeconds * NANOS_PER_SECOND);
+    }
+
+    /**
+     * Start timing again from the specified time, forgetting any time carried over.  Use after
+     * the app was paused so the pause isn't simulated
+     * @param now current time in nanoseconds, from System.nanoTime
+     */
+    public void reset(long now)
+    {
+        lastTime = now;
+        started = true;
+        accumulator = 0;
+        frameNanos = 0;
+    }
+
+    /**
+     * Account for the time since the previous frame
+     * @param now current time in nanoseconds, from System.nanoTime
+     * @return how many update steps to run this frame
+     */
+    public int advance(long now)
+    {
+        if (!started)
+        {
+            //first frame only sets the starting point
+            reset(now);
+            return 0;
+        }
+
+        frameNanos = now - lastTime;
+        lastTime = now;
+        if (frameNanos < 0)
+            frameNanos = 0;
+
+        long counted = frameNanos;
+        if (counted > maxFrameNanos)
+        {
+            droppedNanos += counted - maxFrameNanos;
+            counted = maxFrameNanos;
+        }
+        accumulator += counted;
+
+        int steps = (int) (accumulator / stepNanos);
+        if (steps > maxSteps)
+        {
+            //keep the fraction of a step so alpha stays smooth, drop the rest
+            droppedNanos += (steps - maxSteps) * stepNanos;
+            steps = maxSteps;
+        }
+        accumulator -= steps * stepNanos;
+        if (accumulator >= stepNanos)
+            accumulator %= stepNanos;
+        return steps;
+    }
+
+    /**
+     * Length of one update step
+     * @return step length in seconds
+     */
+    public float getStep()
+    {
+        return (float) (stepNanos / NANOS_PER_SECOND);
+    }
+
+    /**
+     * How far between the last update and the next one we are, used to interpolate drawing
+     * @return alpha between 0 and 1
+     */
+    public float getAlpha()
+    {
+        return (float) accumulator / stepNanos;
+    }
+
+    /**
+     * How long the last frame took
+     * @return frame time in seconds
+     */
+    public float getFrameTime()
+    {
+        return (float) (frameNanos / NANOS_PER_SECOND);
+    }
+
+    /**
+     * How much time was thrown away to keep up, a steadily growing value means the updates
+     * are too slow for the device
+     * @return dropped time in seconds
+     */
+    public float getDroppedTime()
+    {
+        return (float) (droppedNanos / NANOS_PER_SECOND);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.coffeeshopstudio.icegl.gl;
+
+import java.util.Arrays;
+
+/**
+ * Rolling statistics over the most recent frames.  The library counts texture uploads,
+ * GLObject rebuilds and text rasterizations as they happen, GLScreen adds the frame times and
+ * what the sprite batch drew when each frame ends.
+ *
+ * Counting only happens on the GL thread.  Snapshots may be taken from any thread.
+ */
+public class FrameStats
+{
+    /**
+     * The statistics at one point in time, averaged over the frames in the window
+     */
+    public static class Snapshot
+    {
+        public final int frames; //how many frames the numbers cover
+        public final float averageFrameMillis; //time between frames
+        public final float p95FrameMillis;
+        public final float maxFrameMillis;
+        public final float averageCpuMillis; //time spent in onDrawFrame, the rest is waiting on the GPU
+        public final float drawCalls; //everything below is per frame
+        public final float quads;
+        public final float textureUploads;
+        public final float rebuilds;
+        public final float rasterizations;
+
+        Snapshot(int frames, float averageFrameMillis, float p95FrameMillis, float maxFrameMillis, float averageCpuMillis,
+                 float drawCalls, float quads, float textureUploads, float rebuilds, float rasterizations)
+        {
+            this.frames = frames;
+            this.averageFrameMillis = averageFrameMillis;
+            this.p95FrameMillis = p95FrameMillis;
+            this.maxFrameMillis = maxFrameMillis;
+            this.averageCpuMillis = averageCpuMillis;
+            this.drawCalls = drawCalls;
+            this.quads = quads;
+            this.textureUploads = textureUploads;
+            this.rebuilds = rebuilds;
+            this.rasterizations = rasterizations;
+        }
+    }
+
+    private static final int WINDOW = 120; //about two seconds at 60 frames per second
+
+    //counted during the current frame
+    private static int textureUploads = 0;
+    private static int rebuilds = 0;
+    private static int rasterizations = 0;
+
+    //one slot per frame in the window, oldest overwritten first
+    private static final float[] frameMillis = new float[WINDOW];
+    private static final float[] cpuMillis = new float[WINDOW];
+    private static final int[] windowDrawCalls = new int[WINDOW];
+    private static final int[] windowQuads = new int[WINDOW];
+    private static final int[] windowUploads = new int[WINDOW];
+    private static final int[] windowRebuilds = new int[WINDOW];
+    private static final int[] windowRasterizations = new int[WINDOW];
+    private static final float[] sortScratch = new float[WINDOW];
+    private static int next = 0;
+    private static int recorded = 0;
+
+    /**
+     * Count a bitmap being uploaded into a texture
+     */
+    public static void countTextureUpload()
+    {
+        textureUploads++;
+    }
+
+    /**
+     * Count a control rebuilding its GL Objects
+     */
+    public static void countRebuild()
+    {
+        rebuilds++;
+    }
+
+    /**
+     * Count text being drawn into a bitmap
+     */
+    public static void countRasterization()
+    {
+        rasterizations++;
+    }
+
+    /**
+     * Record a finished frame along with everything counted since the last one
+     * @param frameSeconds time since the previous frame began
+     * @param cpuNanos time spent producing this frame
+     * @param drawCalls draw calls the frame issued
+     * @param quads quads the frame drew
+     */
+    public static synchronized void endFrame(float frameSeconds, long cpuNanos, int drawCalls, int quads)
+    {
+        frameMillis[next] = frameSeconds * 1000f;
+        cpuMillis[next] = cpuNanos / 1000000f;
+        windowDrawCalls[next] = drawCalls;
+        windowQuads[next] = quads;
+        windowUploads[next] = textureUploads;
+        windowRebuilds[next] = rebuilds;
+        windowRasterizations[next] = rasterizations;
+        next = (next + 1) % WINDOW;
+        if (recorded < WINDOW)
+            recorded++;
+
+        textureUploads = 0;
+        rebuilds = 0;
+        rasterizations = 0;
+    }
+
+    /**
+     * Forget every recorded frame, used when timing restarts such as after a pause
+     */
+    public static synchronized void reset()
+    {
+        next = 0;
+        recorded = 0;
+    }
+
+    /**
+     * Summarize the frames in the window
+     * @return the current statistics, all zero before the first frame
+     */
+    public static synchronized Snapshot getSnapshot()
+    {
+        if (recorded == 0)
+            return new Snapshot(0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+        float frameTotal = 0;
+        float cpuTotal = 0;
+        long drawCallTotal = 0;
+        long quadTotal = 0;
+        long uploadTotal = 0;
+        long rebuildTotal = 0;
+        long rasterizationTotal = 0;
+        for (int i = 0; i < recorded; i++)
+        {
+            frameTotal += frameMillis[i];
+            cpuTotal += cpuMillis[i];
+            drawCallTotal += windowDrawCalls[i];
+            quadTotal += windowQuads[i];
+            uploadTotal += windowUploads[i];
+            rebuildTotal += windowRebuilds[i];
+            rasterizationTotal += windowRasterizations[i];
+            sortScratch[i] = frameMillis[i];
+        }
+        Arrays.sort(sortScratch, 0, recorded);
+        int p95 = (int) Math.ceil(recorded * 0.95f) - 1;
+
+        return new Snapshot(recorded, frameTotal / recorded, sortScratch[p95], sortScratch[recorded - 1],
+                cpuTotal / recorded, (float) drawCallTotal / recorded, (float) quadTotal / recorded,
+                (float) uploadTotal / recorded, (float) rebuildTotal / recorded, (float) rasterizationTotal / recorded);
+    }
+}
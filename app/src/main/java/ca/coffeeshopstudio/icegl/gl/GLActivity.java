@@ -100,7 +100,39 @@ public abstract class GLActivity extends Activity
     @Override
     public void onBackPressed()
     {
-        screenStack.pop();
+        final GLScreen finished = screenStack.pop();
+        if (!finished.isRunning())
+        {
+            //nothing would run a posted dispose, and a surface that never started or is paused
+            //holds none of our GL objects anymore, so leave now and dispose later
+            finished.disposeOnSurfaceCreated();
+            showPreviousScreen();
+            return;
+        }
+        //the controls free their GL resources on the screen's GL thread, before its surface goes
+        finished.runOnGLThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                finished.dispose();
+                runOnUiThread(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        showPreviousScreen();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Show the screen now on top of the stack, or leave the activity when there is none
+     */
+    private void showPreviousScreen()
+    {
         if (!screenStack.isEmpty())
             updateActiveScreen();
         else
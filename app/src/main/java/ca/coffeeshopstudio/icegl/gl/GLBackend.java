@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ca.coffeeshopstudio.icegl.gl;
+
+import android.graphics.Bitmap;
+
+import java.nio.Buffer;
+import java.nio.IntBuffer;
+
+/**
+ * Every GL call the library makes goes through this interface, so the rendering path can run
+ * against something other than the device driver.  GLES20Backend is the default and simply
+ * forwards to GLES20, RecordingGLBackend runs headless and counts what a frame would cost.
+ * The active backend is ScreenConfiguration.gl.
+ *
+ * Methods match GLES20 one for one, see the GLES20 documentation for what they do.
+ */
+public interface GLBackend
+{
+    void glActiveTexture(int texture);
+
+    void glAttachShader(int program, int shader);
+
+    void glBindBuffer(int target, int buffer);
+
+    void glBindTexture(int target, int texture);
+
+    void glBlendFunc(int sfactor, int dfactor);
+
+    void glBufferData(int target, int size, Buffer data, int usage);
+
+    void glBufferSubData(int target, int offset, int size, Buffer data);
+
+    void glClear(int mask);
+
+    void glClearColor(float red, float green, float blue, float alpha);
+
+    void glCompileShader(int shader);
+
+    int glCreateProgram();
+
+    int glCreateShader(int type);
+
+    void glDeleteBuffers(int n, int[] buffers, int offset);
+
+    void glDeleteProgram(int program);
+
+    void glDeleteShader(int shader);
+
+    void glDeleteTextures(int n, int[] textures, int offset);
+
+    void glDisable(int cap);
+
+    void glDisableVertexAttribArray(int index);
+
+    void glDrawElements(int mode, int count, int type, int offset);
+
+    void glEnable(int cap);
+
+    void glEnableVertexAttribArray(int index);
+
+    void glGenBuffers(int n, int[] buffers, int offset);
+
+    void glGenTextures(int n, IntBuffer textures);
+
+    //the byte[] forms, the String returning ones only arrived in API 17
+    void glGetActiveAttrib(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size,
+                           int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset);
+
+    void glGetActiveUniform(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size,
+                            int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset);
+
+    int glGetAttribLocation(int program, String name);
+
+    void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+    String glGetShaderInfoLog(int shader);
+
+    void glGetShaderiv(int shader, int pname, int[] params, int offset);
+
+    int glGetUniformLocation(int program, String name);
+
+    void glLinkProgram(int program);
+
+    void glShaderSource(int shader, String string);
+
+    void glTexParameteri(int target, int pname, int param);
+
+    void glUniform1f(int location, float x);
+
+    void glUniform1i(int location, int x);
+
+    void glUniform4f(int location, float x, float y, float z, float w);
+
+    void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+
+    void glUseProgram(int program);
+
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr);
+
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset);
+
+    void glViewport(int x, int y, int width, int height);
+
+    /**
+     * Upload a bitmap into the bound texture, as GLUtils.texImage2D
+     * @param target texture target
+     * @param level mipmap level
+     * @param bitmap pixels to upload
+     * @param border must be 0
+     */
+    void texImage2D(int target, int level, Bitmap bitmap, int border);
+
+    /**
+     * Upload a bitmap into part of the bound texture, as GLUtils.texSubImage2D
+     * @param target texture target
+     * @param level mipmap level
+     * @param xoffset left edge of the region we replace
+     * @param yoffset top edge of the region we replace
+     * @param bitmap pixels to upload
+     */
+    void texSubImage2D(int target, int level, int xoffset, int yoffset, Bitmap bitmap);
+}
@@ -21,28 +21,37 @@ import android.opengl.GLES20;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-import java.nio.ShortBuffer;
+
+import ca.coffeeshopstudio.icegl.programs.Program;
 
 /**
  * base object for anything that gets drawn to the screen as part of the framework
  */
 public class GLObject
 {
+    //where the geometry lives when drawing
+    public static final int STORAGE_CLIENT = 0; //copied into the shared sprite batch every frame
+    public static final int STORAGE_BUFFER_OBJECT = 1; //kept on the GPU and only re-uploaded when it changes
+
+    //if we re-upload more often than this many frames we treat the object as dynamic
+    private static final int DYNAMIC_FRAME_THRESHOLD = 60;
+
     private final float DEFAULT_SIZE = 48.0f;
 
     //object position and size
     protected RectGL dimensions = new RectGL(0, 0, DEFAULT_SIZE, DEFAULT_SIZE);
 
-    //Geometric variables
-    protected float vertices[]; //vertices
-    protected short indices[]; //indices
-    protected float uvs[]; //texture data
-    protected FloatBuffer vertexBuffer;
-    protected ShortBuffer drawListBuffer;
-    protected FloatBuffer uvBuffer;
+    //Geometric variables - one interleaved direct buffer (see VertexFormat) written in place and only grown
     protected ByteBuffer bb;
 
+    //GPU buffer objects used when the storage mode is STORAGE_BUFFER_OBJECT
+    private int storageMode = STORAGE_CLIENT;
+    private final int[] bufferID = new int[1]; //buffer object holding the interleaved vertices
+    private int uploadedBytes = 0;
+    private final DirtyRanges dirtyClones = new DirtyRanges(); //clones changed since the last upload
+    private int usageHint = GLES20.GL_STATIC_DRAW;
+    private int lastUploadFrame = -1;
+
     protected float scale = 1.0f;
     protected PointF translation = new PointF(0f, 0f);
 
@@ -56,8 +65,11 @@ public class GLObject
 
     protected int textureID = 0;
 
-    // How many bytes per float
-    protected final int BYTES_PER_FLOAT = 4;
+    //shader program used to draw the object
+    protected Program program = ScreenConfiguration.imageProgram;
+
+    // How many bytes each clone takes in the buffer
+    protected final int BYTES_PER_CLONE = VertexFormat.BYTES_PER_QUAD;
 
     /**
      * Default constructor that builds the various matrix arrays
@@ -164,14 +176,46 @@ public class GLObject
     }
 
     /**
-     * Build the various matrix arrays required to draw our object
+     * Change how many clones the object draws, growing the buffer if needed.  New clones are
+     * empty until they are positioned with generateVertices or setCloneDimensions
+     * @param count number of clones, at least 1
+     * @throws IllegalArgumentException
+     */
+    public void setCloneCount(int count)
+    {
+        if (count < 1)
+            throw new IllegalArgumentException("clone count must be at least 1");
+        arraySize = count;
+        ensureCapacity();
+    }
+
+    /**
+     * Make sure the buffer required to draw our object can hold every clone
      */
     protected void buildArrays()
     {
-        //build our opengl array objects
-        vertices = new float[arraySize * BYTES_PER_FLOAT * 3]; // 3 vertices (x,y,z) per GLObject
-        indices = new short[arraySize * 6]; // 6 indicies per object
-        uvs = new float[arraySize * BYTES_PER_FLOAT * 2]; // 2 is the number of values (u, and v) per GLObject
+        ensureCapacity();
+    }
+
+    /**
+     * Grow the buffer geometrically if it cannot hold every clone, keeping what is already written
+     */
+    protected void ensureCapacity()
+    {
+        int required = getCloneCount() * BYTES_PER_CLONE;
+        if (bb != null && bb.capacity() >= required)
+            return;
+
+        int capacity = bb == null ? required : Math.max(required, bb.capacity() * 2);
+        ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+        grown.order(ByteOrder.nativeOrder());
+        if (bb != null)
+        {
+            bb.clear();
+            grown.put(bb);
+            grown.clear();
+        }
+        bb = grown;
     }
 
     /**
@@ -210,6 +254,27 @@ public class GLObject
         textureID = ID;
     }
 
+    /**
+     * Set the shader program used to draw the object
+     * @param program program to draw with
+     * @throws IllegalArgumentException
+     */
+    public void setProgram(Program program)
+    {
+        if (program == null)
+            throw new IllegalArgumentException("program is null");
+        this.program = program;
+    }
+
+    /**
+     * Return the shader program used to draw the object
+     * @return current program
+     */
+    public Program getProgram()
+    {
+        return program;
+    }
+
     /**
      * Adjust the position where we begin drawing the object on the screen
      * @param deltaX how far to adjust on the horizontal axis
@@ -241,23 +306,140 @@ public class GLObject
         if (cloneID >= getCloneCount())
             throw new IllegalArgumentException("clone ID " + cloneID + " is out of bounds.");
 
-        // draw sprite
-        vertices[(cloneID * 12)] = (dimensions.left) * scaledWidth;
-        vertices[(cloneID * 12) + 1] = (dimensions.bottom * scaledHeight) + scaledHeight + dimensions.height;
-        vertices[(cloneID * 12) + 2] = 0f;
+        ensureCapacity();
+
+        float left = dimensions.left * scaledWidth;
+        float bottom = dimensions.bottom * scaledHeight;
+        float right = left + scaledWidth + dimensions.width;
+        float top = bottom + scaledHeight + dimensions.height;
+
+        writeQuadPosition(cloneID, left, bottom, right, top);
+    }
+
+    /**
+     * Place a single clone at an exact position without touching any other clone.  Only this
+     * clone is marked for upload, so moving one tile of a large object stays cheap
+     * @param cloneID which cloned object we are adjusting
+     * @param left left edge of the clone
+     * @param bottom bottom edge of the clone
+     * @param width how wide the clone is
+     * @param height how tall the clone is
+     * @throws IllegalArgumentException
+     */
+    public void setCloneDimensions(int cloneID, float left, float bottom, float width, float height)
+    {
+        if (cloneID < 0 || cloneID >= getCloneCount())
+            throw new IllegalArgumentException("clone ID " + cloneID + " is out of bounds.");
+
+        ensureCapacity();
+        writeQuadPosition(cloneID, left, bottom, left + width, bottom + height);
+    }
 
-        vertices[(cloneID * 12) + 3] = vertices[(cloneID * 12)]; //dup of 0
-        vertices[(cloneID * 12) + 4] = (dimensions.bottom * scaledHeight);//scaledHeight);
-        vertices[(cloneID * 12) + 5] = 0f;
+    /**
+     * Point a single clone at a different cell of the texture, using the texture offset of the object
+     * @param cloneID which cloned object we are adjusting
+     * @param textureU horizontal cell inside the atlas
+     * @param textureV vertical cell inside the atlas
+     * @throws IllegalArgumentException
+     */
+    public void setCloneTexture(int cloneID, float textureU, float textureV)
+    {
+        setCloneTextureRegion(cloneID,
+                textureU * textDim.width,
+                textureV * textDim.height,
+                (textureU + 1) * textDim.width,
+                (textureV + 1) * textDim.height);
+    }
 
-        vertices[(cloneID * 12) + 6] = (dimensions.left * scaledWidth) + scaledWidth + dimensions.width;
-        vertices[(cloneID * 12) + 7] = vertices[(cloneID * 12) + 4]; //dup of 4
-        vertices[(cloneID * 12) + 8] = 0f;
+    /**
+     * Set the exact texture coordinates of a single clone without touching any other clone
+     * @param cloneID which cloned object we are adjusting
+     * @param u0 left edge inside the texture, 0 to 1
+     * @param v0 top edge inside the texture, 0 to 1
+     * @param u1 right edge inside the texture, 0 to 1
+     * @param v1 bottom edge inside the texture, 0 to 1
+     * @throws IllegalArgumentException
+     */
+    public void setCloneTextureRegion(int cloneID, float u0, float v0, float u1, float v1)
+    {
+        if (cloneID < 0 || cloneID >= getCloneCount())
+            throw new IllegalArgumentException("Clone ID " + cloneID + " out of bounds");
+
+        ensureCapacity();
+        writeQuadTexture(cloneID, u0, v0, u1, v1);
+    }
+
+    /**
+     * Write the four corners of a clone
+     * @param cloneID clone we are writing
+     * @param left left edge
+     * @param bottom bottom edge
+     * @param right right edge
+     * @param top top edge
+     */
+    private void writeQuadPosition(int cloneID, float left, float bottom, float right, float top)
+    {
+        int offset = cloneID * BYTES_PER_CLONE;
+
+        // draw sprite - top left, bottom left, bottom right, top right
+        writePosition(offset, left, top);
+        writePosition(offset + VertexFormat.STRIDE, left, bottom);
+        writePosition(offset + VertexFormat.STRIDE * 2, right, bottom);
+        writePosition(offset + VertexFormat.STRIDE * 3, right, top);
+    }
 
-        vertices[(cloneID * 12) + 9] = vertices[(cloneID * 12) + 6]; //dup of 6
-        vertices[(cloneID * 12) + 10] = vertices[(cloneID * 12) + 1]; //dup of 1
-        vertices[(cloneID * 12) + 11] = 0f;
+    /**
+     * Write the texture coordinates of the four corners of a clone
+     * @param cloneID clone we are writing
+     * @param u0 left edge inside the texture
+     * @param v0 top edge inside the texture
+     * @param u1 right edge inside the texture
+     * @param v1 bottom edge inside the texture
+     */
+    private void writeQuadTexture(int cloneID, float u0, float v0, float u1, float v1)
+    {
+        int offset = cloneID * BYTES_PER_CLONE;
 
+        writeTexture(offset, u0, v0);
+        writeTexture(offset + VertexFormat.STRIDE, u0, v1);
+        writeTexture(offset + VertexFormat.STRIDE * 2, u1, v1);
+        writeTexture(offset + VertexFormat.STRIDE * 3, u1, v0);
+    }
+
+    /**
+     * Write the position of a single vertex, remembering if it actually changed
+     * @param vertexOffset byte position of the vertex inside the buffer
+     * @param x horizontal position
+     * @param y vertical position
+     */
+    private void writePosition(int vertexOffset, float x, float y)
+    {
+        int index = vertexOffset + VertexFormat.POSITION_OFFSET;
+        if (bb.getFloat(index) != x || bb.getFloat(index + 4) != y)
+        {
+            bb.putFloat(index, x);
+            bb.putFloat(index + 4, y);
+            dirtyClones.mark(vertexOffset / BYTES_PER_CLONE);
+        }
+    }
+
+    /**
+     * Write the texture coordinates of a single vertex, remembering if they actually changed
+     * @param vertexOffset byte position of the vertex inside the buffer
+     * @param u horizontal texture coordinate
+     * @param v vertical texture coordinate
+     */
+    private void writeTexture(int vertexOffset, float u, float v)
+    {
+        int index = vertexOffset + VertexFormat.TEXTURE_OFFSET;
+        short packedU = VertexFormat.packTexture(u);
+        short packedV = VertexFormat.packTexture(v);
+        if (bb.getShort(index) != packedU || bb.getShort(index + 2) != packedV)
+        {
+            bb.putShort(index, packedU);
+            bb.putShort(index + 2, packedV);
+            dirtyClones.mark(vertexOffset / BYTES_PER_CLONE);
+        }
     }
 
     /**
@@ -274,29 +456,12 @@ public class GLObject
     }
 
     /**
-     * Build our Indices for all clones
+     * Make sure the shared quad index buffer can index all our clones.  Indices are identical for
+     * every object so they are no longer built per object
      */
     public void generateIndices()
     {
-        // The indices for all textured quads
-        int last = 0;
-        for(int i = 0; i < getCloneCount(); i++)
-        {
-            // We need to set the new indices for the new quad
-            indices[(i*6)] = (short) (last);
-            indices[(i*6) + 1] = (short) (last + 1);
-            indices[(i*6) + 2] = (short) (last + 2);
-            indices[(i*6) + 3] = (short) (last);
-            indices[(i*6) + 4] = (short) (last + 2);
-            indices[(i*6) + 5] = (short) (last + 3);
-
-            // Our indices are connected to the vertices so we need to keep them
-            // in the correct order.
-            // normal quad = 0,1,2,0,2,3 so the next one will be 4,5,6,4,6,7
-            last = last + 4;
-        }
-
-        buildIndiciesBuffer();
+        QuadIndexBuffer.ensureCapacity(getCloneCount());
     }
 
     /**
@@ -325,104 +490,168 @@ public class GLObject
         if (textDim == null)
             throw new IllegalArgumentException("texture dimensions is null");
 
+        ensureCapacity();
+
+        float u0 = textDim.left * textDim.width;
+        float v0 = textDim.bottom * textDim.height;
+        float u1 = (textDim.left+1) * textDim.width;
+        float v1 = (textDim.bottom+1) * textDim.height;
+
         // Adding the UV's using the offsets
-        uvs[(cloneID * 8)] = textDim.left * textDim.width;
-        uvs[(cloneID * 8) + 1] = textDim.bottom * textDim.height;
-        uvs[(cloneID * 8) + 2] = textDim.left * textDim.width;
-        uvs[(cloneID * 8) + 3] = (textDim.bottom+1) * textDim.height;
-        uvs[(cloneID * 8) + 4] = (textDim.left+1) * textDim.width;
-        uvs[(cloneID * 8) + 5] = (textDim.bottom+1) * textDim.height;
-        uvs[(cloneID * 8) + 6] = (textDim.left+1) * textDim.width;
-        uvs[(cloneID * 8) + 7] = textDim.bottom * textDim.height;
+        writeQuadTexture(cloneID, u0, v0, u1, v1);
     }
 
     /**
-     * Build our vertex buffer object
+     * Prepare our vertex buffer object for drawing - the values are already written in place
      */
     protected void buildVertexBuffer() {
-        bb = ByteBuffer.allocateDirect(vertices.length * BYTES_PER_FLOAT);
-        bb.order(ByteOrder.nativeOrder());
-        vertexBuffer = bb.asFloatBuffer();
-        vertexBuffer.put(vertices);
-        vertexBuffer.position(0);
+        bb.position(0);
+    }
+
+    /**
+     * Prepare the texture buffer object for drawing
+     */
+    protected void buildTextureBuffer() {
+        bb.position(0);
     }
 
     /**
-     * Build the byte buffer for the draw list
+     * Choose where the geometry is kept while drawing.  Buffer objects suit large or rarely
+     * changing geometry such as tile maps, client storage suits small controls that batch well
+     * @param storageMode STORAGE_CLIENT or STORAGE_BUFFER_OBJECT
+     * @throws IllegalArgumentException
      */
-    protected void buildIndiciesBuffer()
+    public void setStorageMode(int storageMode)
     {
-        ByteBuffer dlb = ByteBuffer.allocateDirect(indices.length * 2);
-        dlb.order(ByteOrder.nativeOrder());
-        drawListBuffer = dlb.asShortBuffer();
-        drawListBuffer.put(indices);
-        drawListBuffer.position(0);
+        if (storageMode != STORAGE_CLIENT && storageMode != STORAGE_BUFFER_OBJECT)
+            throw new IllegalArgumentException("Storage mode must be STORAGE_CLIENT or STORAGE_BUFFER_OBJECT");
+        this.storageMode = storageMode;
     }
 
     /**
-     * Build the texture buffer object
+     * Returns where the geometry is kept while drawing
+     * @return STORAGE_CLIENT or STORAGE_BUFFER_OBJECT
      */
-    protected void buildTextureBuffer() {
-        ByteBuffer bb = ByteBuffer.allocateDirect(uvs.length * BYTES_PER_FLOAT);
-        bb.order(ByteOrder.nativeOrder());
-        uvBuffer = bb.asFloatBuffer();
-        uvBuffer.put(uvs);
-        uvBuffer.position(0);
+    public int getStorageMode()
+    {
+        return storageMode;
+    }
+
+    /**
+     * Returns the usage hint picked for the buffer objects based on how often we re-upload
+     * @return GL_STATIC_DRAW, GL_DYNAMIC_DRAW or GL_STREAM_DRAW
+     */
+    public int getUsageHint()
+    {
+        return usageHint;
+    }
+
+    /**
+     * The GL context was recreated so any buffer objects we had are gone - upload again on the next draw
+     */
+    public void invalidateBufferObjects()
+    {
+        bufferID[0] = 0;
+        uploadedBytes = 0;
+        dirtyClones.clear();
+        lastUploadFrame = -1;
+    }
+
+    /**
+     * Free the buffer objects on the GPU, must be called on the GL thread
+     */
+    public void releaseBufferObjects()
+    {
+        if (bufferID[0] != 0)
+            GLState.deleteBuffer(bufferID, 0);
+        invalidateBufferObjects();
+    }
+
+    /**
+     * Send any geometry that changed since the last draw to the buffer objects
+     * @param frame the frame we are currently drawing
+     */
+    void uploadBufferObjects(int frame)
+    {
+        if (bufferID[0] == 0)
+        {
+            ScreenConfiguration.gl.glGenBuffers(1, bufferID, 0);
+            usageHint = GLES20.GL_STATIC_DRAW;
+        }
+        else if (dirtyClones.isDirty())
+        {
+            //geometry changed again, pick a hint that matches how often that happens
+            int hint = chooseUsageHint(frame - lastUploadFrame);
+            if (hint != usageHint)
+            {
+                usageHint = hint;
+                //force the storage to be respecified with the new hint
+                uploadedBytes = 0;
+            }
+        }
+
+        int bytes = getCloneCount() * BYTES_PER_CLONE;
+        if (bytes > uploadedBytes)
+        {
+            //storage grew (or was never specified) so everything goes up at once
+            GLState.bindBuffer(GLES20.GL_ARRAY_BUFFER, bufferID[0]);
+            bb.position(0);
+            ScreenConfiguration.gl.glBufferData(GLES20.GL_ARRAY_BUFFER, bytes, bb, usageHint);
+            uploadedBytes = bytes;
+            dirtyClones.clear();
+            lastUploadFrame = frame;
+        }
+        else if (dirtyClones.isDirty())
+        {
+            //only rewrite the clones that actually changed
+            GLState.bindBuffer(GLES20.GL_ARRAY_BUFFER, bufferID[0]);
+            for (int i = 0; i < dirtyClones.getRangeCount(); i++)
+            {
+                int first = dirtyClones.getFirst(i);
+                int last = Math.min(dirtyClones.getLast(i), getCloneCount() - 1);
+                if (first > last)
+                    continue;
+                int offset = first * BYTES_PER_CLONE;
+                int length = (last - first + 1) * BYTES_PER_CLONE;
+                //the GL bindings read from the current position of the buffer
+                bb.position(offset);
+                ScreenConfiguration.gl.glBufferSubData(GLES20.GL_ARRAY_BUFFER, offset, length, bb);
+            }
+            bb.position(0);
+            dirtyClones.clear();
+            lastUploadFrame = frame;
+        }
+    }
+
+    /**
+     * Pick the buffer usage hint based on how long ago we last uploaded
+     * @param framesSinceUpload frames between the last two uploads
+     * @return GL_STATIC_DRAW, GL_DYNAMIC_DRAW or GL_STREAM_DRAW
+     */
+    private int chooseUsageHint(int framesSinceUpload)
+    {
+        if (framesSinceUpload <= 1)
+            return GLES20.GL_STREAM_DRAW;
+        if (framesSinceUpload < DYNAMIC_FRAME_THRESHOLD)
+            return GLES20.GL_DYNAMIC_DRAW;
+        return GLES20.GL_STATIC_DRAW;
+    }
+
+    /**
+     * Returns the buffer object holding our interleaved vertices
+     * @return buffer object name, 0 if not uploaded
+     */
+    int getBufferID()
+    {
+        return bufferID[0];
     }
 
     /**
-     * Render our object to the screen
+     * Render our object to the screen by queueing it on the default layer
      * @param matrixProjectionAndView matrix representing our projection and view
      */
     public void onDraw(float[] matrixProjectionAndView)
     {
-        GLES20.glUseProgram(ScreenConfiguration.imageProgram.getPositionHandle()); // specify the program to use
-
-        //Vertexes
-        // Enable generic vertex attribute array
-        GLES20.glEnableVertexAttribArray(ScreenConfiguration.imageProgram.getPositionHandle());
-        // Prepare the triangle coordinate data
-        GLES20.glVertexAttribPointer(
-                ScreenConfiguration.imageProgram.getPositionHandle(),
-                3,
-                GLES20.GL_FLOAT,
-                false,
-                0,
-                vertexBuffer
-        );
-
-        //Textures
-        // Enable generic vertex attribute array
-        GLES20.glEnableVertexAttribArray(ScreenConfiguration.imageProgram.getTextureCoordinateHandle());
-        // Prepare the texture coordinates
-        GLES20.glVertexAttribPointer(
-                ScreenConfiguration.imageProgram.getTextureCoordinateHandle(),
-                2,
-                GLES20.GL_FLOAT,
-                false,
-                0,
-                uvBuffer
-        );
-
-        // Get handle to shape's transformation matrix and add our matrix
-        int mtrxhandle = GLES20.glGetUniformLocation(ScreenConfiguration.imageProgram.getProgramID(), "uMVPMatrix");
-        GLES20.glUniformMatrix4fv(mtrxhandle, 1, false, matrixProjectionAndView, 0);
-
-        // Get handle to textures locations
-        int mSamplerLoc = GLES20.glGetUniformLocation (ScreenConfiguration.imageProgram.getProgramID(), "s_texture" );
-
-        GLES20.glUniform1i ( mSamplerLoc, textureID);
-
-        // Draw the triangles
-        GLES20.glDrawElements(
-                GLES20.GL_TRIANGLES,
-                indices.length,
-                GLES20.GL_UNSIGNED_SHORT,
-                drawListBuffer
-        );
-
-        // Disable vertex array
-        GLES20.glDisableVertexAttribArray(ScreenConfiguration.imageProgram.getPositionHandle());
-        GLES20.glDisableVertexAttribArray(ScreenConfiguration.imageProgram.getTextureCoordinateHandle());
+        ScreenConfiguration.renderQueue.submit(this, RenderQueue.LAYER_DEFAULT, 0);
     }
 }
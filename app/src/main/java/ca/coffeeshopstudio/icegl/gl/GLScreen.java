@@ -25,6 +25,7 @@ import android.opengl.Matrix;
 import android.view.MotionEvent;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
 
 import javax.microedition.khronos.egl.EGLConfig;
@@ -33,6 +34,8 @@ import javax.microedition.khronos.opengles.GL10;
 import ca.coffeeshopstudio.icegl.controls.Dialog;
 import ca.coffeeshopstudio.icegl.controls.IControl;
 import ca.coffeeshopstudio.icegl.controls.IControlManager;
+import ca.coffeeshopstudio.icegl.controls.StatsOverlay;
+import ca.coffeeshopstudio.icegl.programs.DistanceFieldProgram;
 
 /**
  * Abstract Renderer that each screens screen is based on
@@ -50,7 +53,17 @@ public abstract class GLScreen implements GLSurfaceView.Renderer, IControlManage
     // Our screen resolution
     private float screenWidth;
     private float screenHeight;
-    private long mLastTime; //timer for checking performance
+
+    //game loop timing: fixed size updates, drawing as often as the surface allows
+    private static final float DEFAULT_UPDATE_STEP = 1f / 60f;
+    private static final int MAX_UPDATES_PER_FRAME = 5;
+    private static final float MAX_FRAME_TIME = 0.25f;
+    private FixedStepClock clock = new FixedStepClock(DEFAULT_UPDATE_STEP, MAX_UPDATES_PER_FRAME, MAX_FRAME_TIME);
+    private volatile boolean resetClock = false; //set when resuming so the pause isn't simulated
+
+    //frame statistics overlay, created the first time it is shown
+    private StatsOverlay statsOverlay;
+    private volatile boolean statsVisible = false;
 
     //scaling
     private float scale = 1.0f; //scale unit
@@ -58,10 +71,54 @@ public abstract class GLScreen implements GLSurfaceView.Renderer, IControlManage
     private GLTexture controlTexture; //used strictly for the controls
 
     //active controls assigned from the current screen
-    private List<IControl> controls = new ArrayList<>();
+    private List<IControl> controls = new ArrayList<>(); //kept sorted by layer, back to front
+    private List<Dialog> dialogs = new ArrayList<>(); //checked first, an open dialog takes every touch
+    //where each control sits, laid out on the tile grid, so touches don't test every control
+    private final SpatialGrid<IControl> hitGrid = new SpatialGrid<>(ScreenConfiguration.getHorizontalTiles(),
+            ScreenConfiguration.getVerticalTiles(), ScreenConfiguration.getTileWidth(), ScreenConfiguration.getTileHeight());
+    //overlap depth of each control in the list, so controls overlapping nothing can be batched
+    private int[] drawDepths = new int[0];
+    private volatile boolean depthsStale = true; //a control moved, resized or came and went
+    private final IdentityHashMap<IControl, Integer> assignedDepths = new IdentityHashMap<>();
+    private final List<IControl> overlapping = new ArrayList<>();
+    //the stats overlay sits above everything but must not swallow touches
+    private final SpatialGrid.Matcher<IControl> touchable = new SpatialGrid.Matcher<IControl>()
+    {
+        @Override
+        public boolean matches(IControl item)
+        {
+            return item != statsOverlay;
+        }
+    };
 
     //move the view port to adjust the viewable part of the screen by this much
     private PointF screenAdjustment = new PointF(0, 0);
+    private volatile boolean viewChanged = false; //screen adjustment changed, rebuild the view
+    private final RectGL viewport = new RectGL(0, 0, 0, 0); //visible area of the world
+
+    //surface we are drawn on, used to ask for frames when rendering on demand
+    private volatile GLSurfaceView surface;
+    private volatile boolean renderOnDemand = false;
+    //set when the frame being drawn asks for another, otherwise the next one follows an idle gap
+    private boolean continuesAnimation = false;
+
+    //changes other threads want made to our controls, applied before each frame
+    private final CommandMailbox mailbox = new CommandMailbox();
+    private volatile Thread glThread;
+    private volatile boolean paused = false; //our surface is paused, posted commands wait for it
+    private volatile boolean disposePending = false; //left while nothing could run the dispose
+
+    //touches copied off the UI thread, dispatched before each frame
+    private final TouchQueue touches = new TouchQueue();
+    private final long[] touchDownTimes = new long[32]; //when each pointer went down
+    private final TouchQueue.TouchHandler touchHandler = new TouchQueue.TouchHandler()
+    {
+        @Override
+        public void onTouch(int action, int pointerId, float x, float y, long eventTime)
+        {
+            dispatchTouch(action, pointerId, x, y, eventTime);
+        }
+    };
 
     /**
      * initialize the screen
@@ -75,9 +132,6 @@ public abstract class GLScreen implements GLSurfaceView.Renderer, IControlManage
         this.activity = activity;
         this.context = this.activity.getApplicationContext();
 
-        //init the FPS control
-        mLastTime = System.currentTimeMillis() + 100;
-
         PointF dimensions = ScreenConfiguration.getScreenDimensions(context);
         screenHeight = dimensions.y;
         screenWidth = dimensions.x;
@@ -90,7 +144,8 @@ public abstract class GLScreen implements GLSurfaceView.Renderer, IControlManage
      */
     public void onResume()
     {
-        mLastTime = System.currentTimeMillis();
+        resetClock = true;
+        paused = false;
     }
 
     /**
@@ -101,18 +156,37 @@ public abstract class GLScreen implements GLSurfaceView.Renderer, IControlManage
     @Override
     public void onSurfaceCreated(GL10 unused, EGLConfig config)
     {
+        glThread = Thread.currentThread();
+
+        //a new context starts from the GL defaults, not whatever we last set
+        GLState.invalidate();
+
         // Set the clear color to black
-        GLES20.glClearColor(0.0f, 0.0f, 0.0f, 1);
+        GLState.clearColor(0.0f, 0.0f, 0.0f, 1);
 
         //setup desired blending
-        GLES20.glEnable(GLES20.GL_BLEND);
-        GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        GLState.setBlend(true);
+        GLState.blendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
 
         ScreenConfiguration.imageProgram.buildShaders();
+        //the shared index buffer belonged to the previous GL context
+        QuadIndexBuffer.invalidate();
+        //so were the glyph atlases, controls rebuild them as they need them
+        GlyphAtlas.invalidateAll();
+        DistanceFieldProgram.invalidateAll();
+        TextTextureCache.invalidateAll();
+        TextureAtlas.invalidateAll();
 
         buildControlTexture();
         for (IControl control: controls)
             control.onSurfaceCreated();
+
+        //the controls only needed their GL objects moved to this context to free them again
+        if (disposePending)
+        {
+            disposePending = false;
+            dispose();
+        }
     }
 
     /**
@@ -140,13 +214,15 @@ public abstract class GLScreen implements GLSurfaceView.Renderer, IControlManage
         screenWidth = width;
         screenHeight = height;
         ScreenConfiguration.setTileSize(screenWidth, screenHeight);
+        hitGrid.resize(ScreenConfiguration.getHorizontalTiles(), ScreenConfiguration.getVerticalTiles(),
+                ScreenConfiguration.getTileWidth(), ScreenConfiguration.getTileHeight());
 
         //adjust the controls
         for (IControl control: controls)
             control.onSurfaceChanged();
 
         // Redo the Viewport, making it fill the available screen.
-        GLES20.glViewport(0, 0, (int) screenWidth, (int) screenHeight);
+        GLState.viewport(0, 0, (int) screenWidth, (int) screenHeight);
 
         //build our view with the coordinates allowing full screen viewing
         buildView();
@@ -161,38 +237,163 @@ public abstract class GLScreen implements GLSurfaceView.Renderer, IControlManage
     @Override
     public void onDrawFrame(GL10 unused)
     {
-        // Get the current time
-        long now = System.currentTimeMillis();
+        glThread = Thread.currentThread();
+        //on demand, a frame the previous frame didn't ask for wakes from idle.  Decided before
+        //the drains, since the commands and touches that woke us ask for frames as well
+        boolean afterIdle = renderOnDemand && !continuesAnimation;
+        continuesAnimation = false;
+
+        //apply what other threads changed before anything reads the controls
+        mailbox.drain();
+        //then let the controls react to touches against the state we are about to draw
+        touches.drain(touchHandler);
+
+        // Get the current time, nanoTime never runs backwards
+        long now = System.nanoTime();
+        if (resetClock)
+        {
+            resetClock = false;
+            clock.reset(now);
+            FrameStats.reset();
+        }
+        //the time spent waiting was not play time, so it is neither simulated nor measured
+        if (afterIdle)
+            clock.reset(now);
+
+        //run as many fixed steps as the elapsed time covers
+        int steps = clock.advance(now);
+        for (int i = 0; i < steps; i++)
+            onUpdate(clock.getStep());
 
-        // In case something funky goin down
-        if (mLastTime > now) return;
+        GLState.beginFrame();
 
         // fill the screen with black and clear the Buffers
-        GLES20.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        GLState.clearColor(0.0f, 0.0f, 0.0f, 1.0f);
+        ScreenConfiguration.gl.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+
+        if (viewChanged)
+            buildView();
 
         drawControls();
 
-        // Get the amount of time the last frame took.
-        //long elapsed = now - mLastTime;
+        if (!afterIdle)
+            FrameStats.endFrame(clock.getFrameTime(), System.nanoTime() - now,
+                    ScreenConfiguration.spriteBatch.getDrawCalls(), ScreenConfiguration.spriteBatch.getQuadsDrawn());
+    }
+
+    /**
+     * Show or hide the frame statistics overlay, drawn on top of every other control
+     * @param visible true to show the overlay
+     */
+    public void setStatsVisible(final boolean visible)
+    {
+        statsVisible = visible;
+        //controls are only created and changed on the GL thread
+        runOnGLThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (statsOverlay == null)
+                {
+                    if (!visible)
+                        return;
+                    statsOverlay = new StatsOverlay(GLScreen.this);
+                    statsOverlay.setDirty(true);
+                }
+                statsOverlay.setVisibility(visible);
+            }
+        });
+    }
+
+    /**
+     * Returns whether the frame statistics overlay is showing
+     * @return true if the overlay is visible
+     */
+    public boolean isStatsVisible()
+    {
+        return statsVisible;
+    }
 
-        // Save the current time to see how long it took
-        mLastTime = now;
+    /**
+     * The frame statistics over the most recent frames, the same numbers the overlay shows
+     * @return statistics snapshot
+     */
+    public FrameStats.Snapshot getFrameStats()
+    {
+        return FrameStats.getSnapshot();
     }
 
     /**
-     * Draws our controls and sets us up using the image program
+     * Advance the game by one fixed step.  Called zero or more times before each frame is drawn,
+     * always with the same step, so the simulation behaves the same whatever the frame rate.
+     * Screens rendering on demand must keep calling requestRender while they need updates
+     * @param dt length of the step in seconds
+     */
+    protected void onUpdate(float dt)
+    {
+    }
+
+    /**
+     * Change how many fixed updates run per second
+     * @param updatesPerSecond update rate, 60 by default
+     * @throws IllegalArgumentException
+     */
+    public void setUpdateRate(final int updatesPerSecond)
+    {
+        if (updatesPerSecond <= 0)
+            throw new IllegalArgumentException("update rate must be positive");
+        //the clock belongs to the GL thread
+        runOnGLThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                clock = new FixedStepClock(1f / updatesPerSecond, MAX_UPDATES_PER_FRAME, MAX_FRAME_TIME);
+            }
+        });
+    }
+
+    /**
+     * How far between the last fixed update and the next one the frame being drawn is.  Draw
+     * moving things at previous + (current - previous) * alpha for smooth motion
+     * @return alpha between 0 and 1
+     */
+    @Override
+    public float getInterpolationAlpha()
+    {
+        return clock.getAlpha();
+    }
+
+    /**
+     * How long the last frame took
+     * @return frame time in seconds
+     */
+    public float getFrameTime()
+    {
+        return clock.getFrameTime();
+    }
+
+    /**
+     * Draws our controls by collecting their render commands, sorting them and replaying them
+     * through the shared sprite batch
      */
     private void drawControls()
     {
-        // Apply the projection and view transformation for our controls
-        GLES20.glUniformMatrix4fv(ScreenConfiguration.imageProgram.getMatrixHandle(), 1, false, mtrxProjectionAndView, 0);
+        ScreenConfiguration.renderQueue.begin();
+        //anything drawn straight into the batch lands beneath the queued commands
+        ScreenConfiguration.spriteBatch.begin(mtrxProjectionAndView);
 
-        // Set our shaderprogram to image shader for our controls
-        GLES20.glUseProgram(ScreenConfiguration.imageProgram.getProgramID());
+        if (depthsStale)
+            assignDepths();
+        for (int i = 0; i < controls.size(); i++)
+        {
+            ScreenConfiguration.renderQueue.setDepth(drawDepths[i]);
+            controls.get(i).onDraw(mtrxProjectionAndView);
+        }
 
-        for (IControl control: controls)
-            control.onDraw(mtrxProjectionAndView);
+        ScreenConfiguration.renderQueue.execute(ScreenConfiguration.spriteBatch);
+        ScreenConfiguration.spriteBatch.end();
     }
 
     /**
@@ -200,6 +401,12 @@ public abstract class GLScreen implements GLSurfaceView.Renderer, IControlManage
      */
     protected void buildView()
     {
+        viewChanged = false;
+        viewport.left = -screenAdjustment.x;
+        viewport.bottom = -screenAdjustment.y;
+        viewport.width = screenWidth;
+        viewport.height = screenHeight;
+
         // Clear our matrices
         for(int i=0;i<16;i++)
         {
@@ -230,33 +437,60 @@ public abstract class GLScreen implements GLSurfaceView.Renderer, IControlManage
     /**
      * When a touch event occurs, this determines which control if any is called
      * and passes control down the onTouch chain to the active screen etc
+     * Only copies the event, the controls receive it on the GL thread before the next frame
      * @param event our motion event
-     * @return true if we handled it, false if not
+     * @return true, every touch on the surface is ours
      */
     public boolean onTouchEvent(MotionEvent event)
     {
-        float posX = event.getX();
-        float posY = screenHeight - event.getY();
+        touches.post(event);
+        requestRender();
+        return true;
+    }
 
-        for (IControl control : controls) {
-            if (control instanceof Dialog && control.isEnabled()) {
-                ((Dialog) control).onTouch(event, posX, posY);
-                return true;
-            }
-        }
+    /**
+     * Hand a touch to the control under it, runs on the GL thread
+     * @param action MotionEvent.ACTION_DOWN, ACTION_MOVE, ACTION_UP or ACTION_CANCEL
+     * @param pointerId which finger this is
+     * @param x horizontal position in screen pixels
+     * @param y vertical position in screen pixels, measured from the top
+     * @param eventTime when the touch happened
+     * @return true if a control was touched
+     */
+    private boolean dispatchTouch(int action, int pointerId, float x, float y, long eventTime)
+    {
+        int pointer = pointerId & (touchDownTimes.length - 1);
+        if (action == MotionEvent.ACTION_DOWN)
+            touchDownTimes[pointer] = eventTime;
 
-        for (IControl control : controls)
+        //obtain and recycle come from the framework pool, so this doesn't allocate per touch
+        MotionEvent event = MotionEvent.obtain(touchDownTimes[pointer], eventTime, action, x, y, 0);
+        try
         {
-            if (posX > control.getLeft() &&
-                posX < control.getLeft() + control.getWidth() &&
-                posY < control.getBottom() + control.getHeight() &&
-                posY > control.getBottom()
-                ) {
-                    control.onTouch(event);
+            //touches are in screen space, controls are positioned in the adjusted world
+            float posX = x - screenAdjustment.x;
+            float posY = screenHeight - y - screenAdjustment.y;
+
+            //the top most open dialog takes the touch
+            for (int i = dialogs.size() - 1; i >= 0; i--) {
+                Dialog dialog = dialogs.get(i);
+                if (dialog.isEnabled()) {
+                    dialog.onTouch(event, posX, posY);
                     return true;
                 }
+            }
+
+            IControl control = hitGrid.find(posX, posY, touchable);
+            if (control != null) {
+                control.onTouch(event);
+                return true;
+            }
+            return false;
+        }
+        finally
+        {
+            event.recycle();
         }
-        return false;
     }
 
     /**
@@ -287,7 +521,37 @@ public abstract class GLScreen implements GLSurfaceView.Renderer, IControlManage
      */
     public void onPause()
     {
+        paused = true;
+    }
 
+    /**
+     * Work out the overlap depth of every control.  The list is back to front, so a control
+     * only has to draw after the controls before it on its layer that it overlaps.  Controls
+     * are expected to draw inside their bounds
+     */
+    private void assignDepths()
+    {
+        depthsStale = false;
+        if (drawDepths.length < controls.size())
+            drawDepths = new int[controls.size()];
+        assignedDepths.clear();
+        for (int i = 0; i < controls.size(); i++)
+        {
+            IControl control = controls.get(i);
+            int depth = 0;
+            overlapping.clear();
+            hitGrid.findOverlapping(control, overlapping);
+            for (int j = 0; j < overlapping.size(); j++)
+            {
+                IControl beneath = overlapping.get(j);
+                Integer beneathDepth = assignedDepths.get(beneath);
+                //controls later in the list have no depth yet, they draw over this one
+                if (beneathDepth != null && beneath.getLayer() == control.getLayer() && beneathDepth >= depth)
+                    depth = beneathDepth + 1;
+            }
+            drawDepths[i] = depth;
+            assignedDepths.put(control, depth);
+        }
     }
 
     /**
@@ -298,7 +562,139 @@ public abstract class GLScreen implements GLSurfaceView.Renderer, IControlManage
     public void addControl(IControl control)
     {
         if (control != null)
-            controls.add(control);
+        {
+            controls.add(upperBound(control.getLayer()), control);
+            if (control instanceof Dialog)
+                dialogs.add((Dialog) control);
+            updateControlBounds(control);
+            hitGrid.setPriority(control, control.getLayer());
+        }
+    }
+
+    /**
+     * Take a control off the screen and dispose of it, on the GL thread since the frame being
+     * drawn may still use it
+     * @param control the control we are removing
+     */
+    @Override
+    public void removeControl(final IControl control)
+    {
+        if (control == null)
+            return;
+        runOnGLThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (!controls.remove(control))
+                    return;
+                dialogs.remove(control);
+                hitGrid.remove(control);
+                depthsStale = true;
+                if (control == statsOverlay)
+                    statsOverlay = null;
+                control.dispose();
+                requestRender();
+            }
+        });
+    }
+
+    /**
+     * Tear the screen down, disposing of every control.  Must be called on the GL thread while
+     * the surface still exists, GLActivity does so when the screen is left for good
+     */
+    public void dispose()
+    {
+        for (IControl control : controls)
+        {
+            hitGrid.remove(control);
+            control.dispose();
+        }
+        controls.clear();
+        dialogs.clear();
+        depthsStale = true;
+        //text still being rasterized for us would never reach the GL thread
+        TextRasterizer.discard(this);
+        statsOverlay = null;
+    }
+
+    /**
+     * Whether commands posted to the GL thread run soon, which needs a surface that has been
+     * created and isn't paused
+     * @return true if the GL thread is drawing frames
+     */
+    boolean isRunning()
+    {
+        return glThread != null && !paused;
+    }
+
+    /**
+     * Dispose of the screen the next time its surface is created, for screens left while their
+     * GL thread was not running.  Whatever GL objects they had went with the old GL context
+     */
+    void disposeOnSurfaceCreated()
+    {
+        disposePending = true;
+        TextRasterizer.discard(this);
+    }
+
+    /**
+     * Move a control to the top of its new layer, for drawing and for touches
+     * @param control the control that changed
+     */
+    @Override
+    public void updateControlLayer(IControl control)
+    {
+        if (controls.remove(control))
+        {
+            controls.add(upperBound(control.getLayer()), control);
+            hitGrid.setPriority(control, control.getLayer());
+            depthsStale = true;
+        }
+    }
+
+    /**
+     * Find where a control on the specified layer goes so it is drawn after everything on
+     * the same or lower layers
+     * @param layer layer of the control we are placing
+     * @return index to insert at
+     */
+    private int upperBound(int layer)
+    {
+        int low = 0;
+        int high = controls.size();
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (controls.get(middle).getLayer() <= layer)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Keep the touch index in step with where a control is, called whenever it moves or resizes
+     * @param control the control that changed
+     */
+    @Override
+    public void updateControlBounds(IControl control)
+    {
+        hitGrid.update(control, control.getLeft(), control.getBottom(), control.getWidth(), control.getHeight());
+        depthsStale = true;
+    }
+
+    /**
+     * Collect every control under a point, top most first
+     * @param x horizontal position in the world
+     * @param y vertical position in the world
+     * @param out list the controls are added to
+     */
+    @Override
+    public void findControlsAt(float x, float y, List<IControl> out)
+    {
+        hitGrid.findAll(x, y, out);
     }
 
     /**
@@ -307,7 +703,99 @@ public abstract class GLScreen implements GLSurfaceView.Renderer, IControlManage
      */
     public void setScreenAdjustment(PointF screenAdjustment)
     {
+        if (screenAdjustment == null)
+            throw new IllegalArgumentException("screen adjustment is null");
         this.screenAdjustment = screenAdjustment;
+        viewChanged = true;
+        requestRender();
+    }
+
+    /**
+     * Only draw frames when something changes instead of continuously.  Controls ask for a
+     * frame when they are changed, moved, shown or hidden, touches always get one, and
+     * animations keep frames coming by calling requestRender every frame they run
+     * @param renderOnDemand true to draw on demand, false to draw continuously
+     */
+    public void setRenderOnDemand(boolean renderOnDemand)
+    {
+        this.renderOnDemand = renderOnDemand;
+        GLSurfaceView attached = surface;
+        if (attached != null)
+            attached.setRenderMode(getRenderMode());
+        requestRender();
+    }
+
+    /**
+     * Returns whether we only draw when something changes
+     * @return true if rendering on demand
+     */
+    public boolean isRenderOnDemand()
+    {
+        return renderOnDemand;
+    }
+
+    /**
+     * The GLSurfaceView render mode matching our setting
+     * @return RENDERMODE_WHEN_DIRTY when rendering on demand, otherwise RENDERMODE_CONTINUOUSLY
+     */
+    int getRenderMode()
+    {
+        return renderOnDemand ? GLSurfaceView.RENDERMODE_WHEN_DIRTY : GLSurfaceView.RENDERMODE_CONTINUOUSLY;
+    }
+
+    /**
+     * Remember the surface we are drawn on
+     * @param surface surface showing this screen
+     */
+    void attachSurface(GLSurfaceView surface)
+    {
+        this.surface = surface;
+    }
+
+    /**
+     * Ask for another frame.  Does nothing when drawing continuously, when rendering on demand
+     * the surface draws one more frame and then waits again, so requests made while a frame is
+     * drawn simply lead to one more frame
+     */
+    @Override
+    public void requestRender()
+    {
+        GLSurfaceView attached = surface;
+        if (renderOnDemand && attached != null)
+        {
+            //requests from the frame itself keep an animation going without an idle gap
+            if (Thread.currentThread() == glThread)
+                continuesAnimation = true;
+            attached.requestRender();
+        }
+    }
+
+    /**
+     * Run a command on the GL thread.  Commands from other threads are queued and run at the
+     * start of the next frame, commands from the GL thread itself run straight away
+     * @param command work to run
+     */
+    @Override
+    public void runOnGLThread(Runnable command)
+    {
+        if (Thread.currentThread() == glThread)
+            command.run();
+        else
+        {
+            mailbox.post(command);
+            //the command only runs once a frame is drawn
+            requestRender();
+        }
+    }
+
+    /**
+     * The part of the world currently visible on the screen, after any screen adjustment
+     * @return visible area
+     */
+    @Override
+    public RectGL getViewport()
+    {
+        return viewport;
     }
 
     /**
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.coffeeshopstudio.icegl.gl;
+
+import android.opengl.GLES20;
+
+/**
+ * Remembers the GL state the library last set and drops calls that would not change it.
+ * The program, texture bindings, active texture unit, buffer bindings, enabled vertex
+ * attributes, blending, clear colour and viewport all go through here.
+ *
+ * Only use this from the GL thread.  Code that changes any of this state by calling the GL
+ * backend directly must call invalidate() afterwards so we stop trusting what we remember.
+ */
+public class GLState
+{
+    private static final int UNKNOWN = -1;
+    private static final int MAX_TEXTURE_UNITS = 32; //GL_TEXTURE0 to GL_TEXTURE31
+    private static final int MAX_ATTRIBUTES = 32; //we track them as bits of an int
+
+    private static int program = UNKNOWN;
+    private static int activeUnit = UNKNOWN;
+    private static final int[] boundTextures = new int[MAX_TEXTURE_UNITS];
+    private static final int[] deleteScratch = new int[1];
+    private static int arrayBuffer = UNKNOWN;
+    private static int elementBuffer = UNKNOWN;
+
+    //bit n set means attribute n is enabled, knownAttributes says which bits we can trust
+    private static int enabledAttributes = 0;
+    private static int knownAttributes = 0;
+
+    private static int blend = UNKNOWN; //0 disabled, 1 enabled
+    private static int blendSource = UNKNOWN;
+    private static int blendDestination = UNKNOWN;
+
+    private static final float[] clearColor = new float[4];
+    private static boolean clearColorKnown = false;
+
+    private static int viewportX = UNKNOWN;
+    private static int viewportY = UNKNOWN;
+    private static int viewportWidth = UNKNOWN;
+    private static int viewportHeight = UNKNOWN;
+
+    //calls made and dropped since beginFrame
+    private static int issuedCalls = 0;
+    private static int droppedCalls = 0;
+
+    static
+    {
+        invalidate();
+    }
+
+    /**
+     * Forget everything we remember, the next call for each piece of state always reaches GL.
+     * Call after the context is created or after changing state without going through here
+     */
+    public static void invalidate()
+    {
+        program = UNKNOWN;
+        activeUnit = UNKNOWN;
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++)
+            boundTextures[i] = UNKNOWN;
+        arrayBuffer = UNKNOWN;
+        elementBuffer = UNKNOWN;
+        enabledAttributes = 0;
+        knownAttributes = 0;
+        blend = UNKNOWN;
+        blendSource = UNKNOWN;
+        blendDestination = UNKNOWN;
+        clearColorKnown = false;
+        viewportX = UNKNOWN;
+        viewportY = UNKNOWN;
+        viewportWidth = UNKNOWN;
+        viewportHeight = UNKNOWN;
+    }
+
+    /**
+     * Start counting calls for a new frame
+     */
+    public static void beginFrame()
+    {
+        issuedCalls = 0;
+        droppedCalls = 0;
+    }
+
+    /**
+     * How many state calls reached GL since the frame began
+     * @return issued call count
+     */
+    public static int getIssuedCalls()
+    {
+        return issuedCalls;
+    }
+
+    /**
+     * How many state calls were dropped because they would not have changed anything
+     * @return dropped call count
+     */
+    public static int getDroppedCalls()
+    {
+        return droppedCalls;
+    }
+
+    /**
+     * glUseProgram
+     * @param programID program to use
+     */
+    public static void useProgram(int programID)
+    {
+        if (program == programID)
+        {
+            droppedCalls++;
+            return;
+        }
+        program = programID;
+        issuedCalls++;
+        ScreenConfiguration.gl.glUseProgram(programID);
+    }
+
+    /**
+     * glActiveTexture
+     * @param unit texture unit, 0 for GL_TEXTURE0
+     * @throws IllegalArgumentException
+     */
+    public static void activeTexture(int unit)
+    {
+        if (unit < 0 || unit >= MAX_TEXTURE_UNITS)
+            throw new IllegalArgumentException("texture unit " + unit + " is out of range");
+        if (activeUnit == unit)
+        {
+            droppedCalls++;
+            return;
+        }
+        activeUnit = unit;
+        issuedCalls++;
+        ScreenConfiguration.gl.glActiveTexture(GLES20.GL_TEXTURE0 + unit);
+    }
+
+    /**
+     * Bind a 2D texture to a texture unit, leaving that unit active
+     * @param unit texture unit, 0 for GL_TEXTURE0
+     * @param textureID texture to bind
+     * @throws IllegalArgumentException
+     */
+    public static void bindTexture(int unit, int textureID)
+    {
+        activeTexture(unit);
+        if (boundTextures[unit] == textureID)
+        {
+            droppedCalls++;
+            return;
+        }
+        boundTextures[unit] = textureID;
+        issuedCalls++;
+        ScreenConfiguration.gl.glBindTexture(GLES20.GL_TEXTURE_2D, textureID);
+    }
+
+    /**
+     * Delete a texture, forgetting it on any unit it was bound to
+     * @param textureID texture to delete
+     */
+    public static void deleteTexture(int textureID)
+    {
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++)
+            if (boundTextures[i] == textureID)
+                boundTextures[i] = 0;
+        issuedCalls++;
+        deleteScratch[0] = textureID;
+        ScreenConfiguration.gl.glDeleteTextures(1, deleteScratch, 0);
+    }
+
+    /**
+     * glBindBuffer for GL_ARRAY_BUFFER or GL_ELEMENT_ARRAY_BUFFER
+     * @param target GLES20.GL_ARRAY_BUFFER or GLES20.GL_ELEMENT_ARRAY_BUFFER
+     * @param bufferID buffer to bind, 0 to unbind
+     * @throws IllegalArgumentException
+     */
+    public static void bindBuffer(int target, int bufferID)
+    {
+        int current;
+        if (target == GLES20.GL_ARRAY_BUFFER)
+            current = arrayBuffer;
+        else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER)
+            current = elementBuffer;
+        else
+            throw new IllegalArgumentException("target must be GL_ARRAY_BUFFER or GL_ELEMENT_ARRAY_BUFFER");
+
+        if (current == bufferID)
+        {
+            droppedCalls++;
+            return;
+        }
+        if (target == GLES20.GL_ARRAY_BUFFER)
+            arrayBuffer = bufferID;
+        else
+            elementBuffer = bufferID;
+        issuedCalls++;
+        ScreenConfiguration.gl.glBindBuffer(target, bufferID);
+    }
+
+    /**
+     * Delete a buffer object, GL unbinds it if it was bound so we forget it too
+     * @param buffers array holding the buffer ID
+     * @param offset where the ID is inside the array
+     */
+    public static void deleteBuffer(int[] buffers, int offset)
+    {
+        if (arrayBuffer == buffers[offset])
+            arrayBuffer = 0;
+        if (elementBuffer == buffers[offset])
+            elementBuffer = 0;
+        issuedCalls++;
+        ScreenConfiguration.gl.glDeleteBuffers(1, buffers, offset);
+    }
+
+    /**
+     * glEnableVertexAttribArray
+     * @param location attribute location
+     */
+    public static void enableAttribute(int location)
+    {
+        if (location < 0)
+            return;
+        if (location < MAX_ATTRIBUTES)
+        {
+            int bit = 1 << location;
+            if ((knownAttributes & bit) != 0 && (enabledAttributes & bit) != 0)
+            {
+                droppedCalls++;
+                return;
+            }
+            knownAttributes |= bit;
+            enabledAttributes |= bit;
+        }
+        issuedCalls++;
+        ScreenConfiguration.gl.glEnableVertexAttribArray(location);
+    }
+
+    /**
+     * glDisableVertexAttribArray
+     * @param location attribute location
+     */
+    public static void disableAttribute(int location)
+    {
+        if (location < 0)
+            return;
+        if (location < MAX_ATTRIBUTES)
+        {
+            int bit = 1 << location;
+            if ((knownAttributes & bit) != 0 && (enabledAttributes & bit) == 0)
+            {
+                droppedCalls++;
+                return;
+            }
+            knownAttributes |= bit;
+            enabledAttributes &= ~bit;
+        }
+        issuedCalls++;
+        ScreenConfiguration.gl.glDisableVertexAttribArray(location);
+    }
+
+    /**
+     * Disable every attribute we know to be enabled
+     */
+    public static void disableAllAttributes()
+    {
+        for (int location = 0; location < MAX_ATTRIBUTES; location++)
+            if ((enabledAttributes & (1 << location)) != 0)
+                disableAttribute(location);
+    }
+
+    /**
+     * Turn blending on or off
+     * @param enabled true to enable GL_BLEND
+     */
+    public static void setBlend(boolean enabled)
+    {
+        int value = enabled ? 1 : 0;
+        if (blend == value)
+        {
+            droppedCalls++;
+            return;
+        }
+        blend = value;
+        issuedCalls++;
+        if (enabled)
+            ScreenConfiguration.gl.glEnable(GLES20.GL_BLEND);
+        else
+            ScreenConfiguration.gl.glDisable(GLES20.GL_BLEND);
+    }
+
+    /**
+     * glBlendFunc
+     * @param source source factor
+     * @param destination destination factor
+     */
+    public static void blendFunc(int source, int destination)
+    {
+        if (blendSource == source && blendDestination == destination)
+        {
+            droppedCalls++;
+            return;
+        }
+        blendSource = source;
+        blendDestination = destination;
+        issuedCalls++;
+        ScreenConfiguration.gl.glBlendFunc(source, destination);
+    }
+
+    /**
+     * glClearColor
+     * @param red red component
+     * @param green green component
+     * @param blue blue component
+     * @param alpha alpha component
+     */
+    public static void clearColor(float red, float green, float blue, float alpha)
+    {
+        if (clearColorKnown && clearColor[0] == red && clearColor[1] == green
+                && clearColor[2] == blue && clearColor[3] == alpha)
+        {
+            droppedCalls++;
+            return;
+        }
+        clearColor[0] = red;
+        clearColor[1] = green;
+        clearColor[2] = blue;
+        clearColor[3] = alpha;
+        clearColorKnown = true;
+        issuedCalls++;
+        ScreenConfiguration.gl.glClearColor(red, green, blue, alpha);
+    }
+
+    /**
+     * glViewport
+     * @param x left edge
+     * @param y bottom edge
+     * @param width viewport width
+     * @param height viewport height
+     */
+    public static void viewport(int x, int y, int width, int height)
+    {
+        if (viewportX == x && viewportY == y && viewportWidth == width && viewportHeight == height)
+        {
+            droppedCalls++;
+            return;
+        }
+        viewportX = x;
+        viewportY = y;
+        viewportWidth = width;
+        viewportHeight = height;
+        issuedCalls++;
+        ScreenConfiguration.gl.glViewport(x, y, width, height);
+    }
+}
@@ -23,10 +23,68 @@ import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class GLText
 {
+    /**
+     * A rasterized string along with the size of the text inside it
+     */
+    public static class TextBitmap
+    {
+        public final Bitmap bitmap;
+        public final Rect dimensions; //dimensions of the text, the bitmap has some breathing room
+
+        TextBitmap(Bitmap bitmap, Rect dimensions)
+        {
+            this.bitmap = bitmap;
+            this.dimensions = dimensions;
+        }
+    }
+
+    /**
+     * The paints of one thread, least recently used dropped first once full
+     */
+    private static class PaintCache extends LinkedHashMap<String, Paint>
+    {
+        int generation = paintGeneration;
+
+        PaintCache()
+        {
+            super(64, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Paint> eldest)
+        {
+            return size() > MAX_PAINTS;
+        }
+    }
+
     private static final int FONT_BUFFER = 8; //extra breathing room for the font
-    private static Rect dimensions; //dimensions of the generated bmp
+    private static final int MAX_TYPEFACES = 8; //fonts kept parsed
+    private static final int MAX_PAINTS = 32; //font, size, colour and underline combinations kept per thread
+
+    //least recently used entries are dropped first once the caches are full
+    private static final Map<String, Typeface> typefaces = new LinkedHashMap<String, Typeface>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Typeface> eldest)
+        {
+            return size() > MAX_TYPEFACES;
+        }
+    };
+    //every thread keeps its own paints, so threads rasterizing at once never share one
+    private static final ThreadLocal<PaintCache> paints = new ThreadLocal<PaintCache>()
+    {
+        @Override
+        protected PaintCache initialValue()
+        {
+            return new PaintCache();
+        }
+    };
+    private static volatile int paintGeneration = 0; //bumped by clearCache, each thread then starts over
 
     /**
      * Generate a Bitmap based on the text message
@@ -53,45 +111,110 @@ public class GLText
      * @return Bitmap containing the desired text
      */
     public static Bitmap buildTextBitmap(Context context, String text, String fontFile, int size, GLColor color, boolean underline)
+    {
+        FrameStats.countRasterization();
+        return rasterize(context, text, fontFile, size, color, underline).bitmap;
+    }
+
+    /**
+     * Generate a Bitmap based on the text message, returning its dimensions with it.  Safe to
+     * call from any thread, it is up to the caller to count the rasterization on the GL thread
+     * @param context active context
+     * @param text text to display
+     * @param fontFile font being used (from assets folder)
+     * @param size font size
+     * @param color color of the font
+     * @param underline whether or not to underline the text
+     * @return the bitmap containing the desired text and the dimensions of the text
+     */
+    public static TextBitmap rasterize(Context context, String text, String fontFile, int size, GLColor color, boolean underline)
     {
         if (context == null)
             throw new NullPointerException("null context");
         if (fontFile == null || fontFile.isEmpty())
             throw new NullPointerException("null font file");
 
-        Typeface tf = Typeface.createFromAsset(context.getAssets(), fontFile);
-
-        Paint paint = new Paint();
-        paint.setAntiAlias(true);
-        paint.setTextSize(size);
-        paint.setUnderlineText(underline);
-        paint.setARGB(color.alphaInt(),
-                color.redInt(),
-                color.greenInt(),
-                color.blueInt());
-        paint.setTypeface(tf);
+        Paint paint = getPaint(context, fontFile, size, color, underline);
 
         Rect textBounds = new Rect();
         paint.getTextBounds(text, 0, text.length(), textBounds);
-        dimensions = new Rect(textBounds);
 
         Bitmap bitmap = Bitmap.createBitmap(textBounds.width() + FONT_BUFFER, textBounds.height() + FONT_BUFFER, Bitmap.Config.ARGB_4444);
         Canvas canvas = new Canvas(bitmap);
         bitmap.eraseColor(0);
 
-        canvas.drawText(text, 0, dimensions.height(), paint);
+        canvas.drawText(text, 0, textBounds.height(), paint);
 
-        dimensions = new Rect(0, 0, textBounds.width(), textBounds.height());
-        return bitmap;
+        return new TextBitmap(bitmap, new Rect(0, 0, textBounds.width(), textBounds.height()));
+    }
+
+    /**
+     * Get a font, only reading it from the assets the first time.  Safe to call from any thread
+     * @param context active context
+     * @param fontFile font being used (from assets folder)
+     * @return the parsed font
+     */
+    public static Typeface getTypeface(Context context, String fontFile)
+    {
+        synchronized (typefaces)
+        {
+            Typeface typeface = typefaces.get(fontFile);
+            if (typeface == null)
+            {
+                typeface = Typeface.createFromAsset(context.getAssets(), fontFile);
+                typefaces.put(fontFile, typeface);
+            }
+            return typeface;
+        }
+    }
+
+    /**
+     * Get a paint set up to draw text, only building it the first time on each thread.  The
+     * paint belongs to the calling thread, only draw and measure with it, never change it
+     * @param context active context
+     * @param fontFile font being used (from assets folder)
+     * @param size font size
+     * @param color color of the font
+     * @param underline whether or not to underline the text
+     * @return the shared paint
+     */
+    public static Paint getPaint(Context context, String fontFile, int size, GLColor color, boolean underline)
+    {
+        String key = fontFile + '|' + size + '|' + color.alphaInt() + ',' + color.redInt() + ','
+                + color.greenInt() + ',' + color.blueInt() + '|' + underline;
+        PaintCache cache = paints.get();
+        if (cache.generation != paintGeneration)
+        {
+            cache.clear();
+            cache.generation = paintGeneration;
+        }
+        Paint paint = cache.get(key);
+        if (paint == null)
+        {
+            paint = new Paint();
+            paint.setAntiAlias(true);
+            paint.setTextSize(size);
+            paint.setUnderlineText(underline);
+            paint.setARGB(color.alphaInt(),
+                    color.redInt(),
+                    color.greenInt(),
+                    color.blueInt());
+            paint.setTypeface(getTypeface(context, fontFile));
+            cache.put(key, paint);
+        }
+        return paint;
     }
 
     /**
-     * Returns the dimensions of the most recently generated text
-     * TODO there should be a better way of doing this, possibly pass the information back in buildTextBitmap
-     * @return Rect of the dimensions
+     * Forget every cached font and paint, for when memory is tight
      */
-    public static Rect getDimensions()
+    public static void clearCache()
     {
-        return dimensions;
+        synchronized (typefaces)
+        {
+            //each thread drops its paints the next time it asks for one
+            paintGeneration++;
+            typefaces.clear();
+        }
     }
 }
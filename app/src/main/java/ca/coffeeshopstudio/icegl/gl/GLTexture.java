@@ -20,7 +20,6 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.opengl.GLES20;
-import android.opengl.GLUtils;
 
 import java.nio.IntBuffer;
 
@@ -125,7 +124,7 @@ public class GLTexture
     private void initTexture()
     {
         //add our texture and initialize the buffer
-        GLES20.glGenTextures(1, t);
+        ScreenConfiguration.gl.glGenTextures(1, t);
         textureID = t.get(0);
     }
 
@@ -142,19 +141,19 @@ public class GLTexture
      * @param bmp bitmap we will be loading in
      */
     private void generateTexture(Bitmap bmp) {
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + textureID);  // Set the active texture unit to texture unit 0
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureID); // Bind the texture to this unit
+        GLState.bindTexture(0, textureID); // Bind the texture to texture unit 0, everything samples from it
 
         // Set filtering
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        ScreenConfiguration.gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        ScreenConfiguration.gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
 
         // Set wrapping mode
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        ScreenConfiguration.gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        ScreenConfiguration.gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
 
         // Load the bitmap into the bound texture.
-        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bmp, 0);
+        ScreenConfiguration.gl.texImage2D(GLES20.GL_TEXTURE_2D, 0, bmp, 0);
+        FrameStats.countTextureUpload();
 
         textureWidth = bmp.getWidth();
         textureHeight = bmp.getHeight();
@@ -166,6 +165,17 @@ public class GLTexture
         bmp.recycle();
     }
 
+    /**
+     * Free the texture, it can't be drawn afterwards
+     */
+    public void delete()
+    {
+        if (textureID == -1)
+            return;
+        GLState.deleteTexture(textureID);
+        textureID = -1;
+    }
+
     /**
      * The texture ID of this atlas
      * @return valid texture ID
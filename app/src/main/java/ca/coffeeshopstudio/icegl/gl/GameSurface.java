@@ -41,9 +41,10 @@ class GameSurface extends GLSurfaceView {
         // Set the Renderer for drawing on the GLSurfaceView
         this.mRenderer = screen;
         setRenderer(mRenderer);
+        mRenderer.attachSurface(this);
 
-        // Render the view only when there is a change in the drawing data
-        setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+        // Render continuously, or only when there is a change if the screen asked for that
+        setRenderMode(mRenderer.getRenderMode());
     }
 
     /**
@@ -0,0 +1,540 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ca.coffeeshopstudio.icegl.gl;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.opengl.GLES20;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Every glyph of one font, size and colour rasterized once into a shared texture, so text is
+ * drawn as one quad per character and changing it only rewrites vertices.  Printable ASCII is
+ * rasterized up front, anything else the first time it is asked for, while there is room.
+ *
+ * Glyphs sit on shelves one line tall.  Each is drawn with its baseline the same distance from
+ * the top of its cell, so every quad of a line shares the same bottom and height.
+ *
+ * A distance field atlas stores, instead of coverage, how far each texel is from the edge of
+ * the glyph.  Drawn with DistanceFieldProgram it stays sharp at any size, so one atlas per
+ * font serves every size, scale and colour.
+ *
+ * Only use this from the GL thread.
+ */
+public class GlyphAtlas
+{
+    /**
+     * Where a glyph is in the atlas and how it is placed on a line
+     */
+    public static class Glyph
+    {
+        public final float advance; //how far the pen moves after this glyph
+        public final float left; //left edge of the cell relative to the pen
+        public final float width; //width of the cell
+        public final float u0;
+        public final float v0;
+        public final float u1;
+        public final float v1;
+
+        Glyph(float advance, float left, float width, float u0, float v0, float u1, float v1)
+        {
+            this.advance = advance;
+            this.left = left;
+            this.width = width;
+            this.u0 = u0;
+            this.v0 = v0;
+            this.u1 = u1;
+            this.v1 = v1;
+        }
+    }
+
+    //how far from the edge, in texels, a distance field still tells inside from outside
+    public static final int DISTANCE_FIELD_SPREAD = 6;
+    //size the distance field glyphs are rasterized at, every other size is scaled from it
+    public static final int DISTANCE_FIELD_SIZE = 48;
+
+    private static final int PADDING = 1; //keeps neighbouring glyphs from bleeding when filtered
+    private static final float FAR = 1e20f; //squared distance to a pixel that doesn't exist
+    private static final int SOLID_SIZE = 4; //filled block used for underlines
+    private static final int MIN_PAGE = 64;
+    private static final int MAX_PAGE = 2048;
+    private static final char FIRST_PRELOADED = 32;
+    private static final char LAST_PRELOADED = 126;
+
+    //every atlas created in the current GL context
+    private static final Map<String, GlyphAtlas> atlases = new HashMap<>();
+
+    private final Paint paint;
+    private final boolean distanceField;
+    private final int padding;
+    private final float ascent;
+    private final float descent;
+    private final int cellHeight;
+    private final int pageSize;
+    private final GLTexture texture;
+    private final Glyph[] ascii = new Glyph[LAST_PRELOADED + 1];
+    private final Map<Character, Glyph> others = new HashMap<>();
+    private final Rect bounds = new Rect();
+    private final char[] single = new char[1];
+    private float solidU;
+    private float solidV;
+
+    //shelf packing position
+    private int shelfX = 0;
+    private int shelfY = 0;
+
+    /**
+     * Get the atlas of a font, size and colour, creating it the first time
+     * @param context active context
+     * @param fontFile font being used (from assets folder)
+     * @param size font size
+     * @param color color of the font
+     * @return shared atlas
+     * @throws IllegalArgumentException
+     */
+    public static GlyphAtlas get(Context context, String fontFile, int size, GLColor color)
+    {
+        if (context == null)
+            throw new IllegalArgumentException("null context");
+        if (fontFile == null || fontFile.isEmpty())
+            throw new IllegalArgumentException("null font file");
+        if (size <= 0)
+            throw new IllegalArgumentException("font size must be positive");
+
+        String key = fontFile + '|' + size + '|' + color.alphaInt() + ',' + color.redInt() + ','
+                + color.greenInt() + ',' + color.blueInt();
+        GlyphAtlas atlas = atlases.get(key);
+        if (atlas == null)
+        {
+            atlas = new GlyphAtlas(context, fontFile, size, color, false);
+            atlases.put(key, atlas);
+        }
+        return atlas;
+    }
+
+    /**
+     * Get the distance field atlas of a font, creating it the first time.  Its metrics are
+     * those of DISTANCE_FIELD_SIZE, scale them for any other size
+     * @param context active context
+     * @param fontFile font being used (from assets folder)
+     * @return shared atlas
+     * @throws IllegalArgumentException
+     */
+    public static GlyphAtlas getDistanceField(Context context, String fontFile)
+    {
+        if (context == null)
+            throw new IllegalArgumentException("null context");
+        if (fontFile == null || fontFile.isEmpty())
+            throw new IllegalArgumentException("null font file");
+
+        String key = fontFile + "|distance";
+        GlyphAtlas atlas = atlases.get(key);
+        if (atlas == null)
+        {
+            atlas = new GlyphAtlas(context, fontFile, DISTANCE_FIELD_SIZE, GLColor.White, true);
+            atlases.put(key, atlas);
+        }
+        return atlas;
+    }
+
+    /**
+     * Forget every atlas, their textures belonged to a GL context that is gone
+     */
+    public static void invalidateAll()
+    {
+        atlases.clear();
+    }
+
+    /**
+     * Rasterize the preloaded glyphs and upload the atlas
+     */
+    private GlyphAtlas(Context context, String fontFile, int size, GLColor color, boolean distanceField)
+    {
+        this.distanceField = distanceField;
+        //distance fields need room around each glyph for the distances outside it
+        padding = distanceField ? DISTANCE_FIELD_SPREAD : PADDING;
+
+        paint = new Paint();
+        paint.setAntiAlias(true);
+        paint.setTextSize(size);
+        paint.setARGB(color.alphaInt(), color.redInt(), color.greenInt(), color.blueInt());
+        //our own paint since it draws on the GL thread, the font itself is shared
+        paint.setTypeface(GLText.getTypeface(context, fontFile));
+
+        Paint.FontMetrics metrics = paint.getFontMetrics();
+        ascent = -metrics.ascent;
+        descent = metrics.descent;
+        cellHeight = (int) Math.ceil(ascent + descent) + padding * 2;
+
+        //room for the preloaded glyphs twice over, what is left takes glyphs found later
+        float area = (SOLID_SIZE + padding * 2) * cellHeight;
+        for (char c = FIRST_PRELOADED; c <= LAST_PRELOADED; c++)
+            area += cellWidth(c) * cellHeight;
+        int page = MIN_PAGE;
+        while (page < MAX_PAGE && page * page < area * 2)
+            page *= 2;
+        pageSize = page;
+
+        FrameStats.countRasterization();
+        Bitmap bitmap = Bitmap.createBitmap(pageSize, pageSize, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(0);
+        Canvas canvas = new Canvas(bitmap);
+
+        //a filled block, sampling its middle gives solid colour for underlines.  In a distance
+        //field full alpha means well inside, so the same block works there too
+        canvas.drawRect(padding, padding, padding + SOLID_SIZE, padding + SOLID_SIZE, paint);
+        solidU = (padding + SOLID_SIZE / 2f) / pageSize;
+        solidV = (padding + SOLID_SIZE / 2f) / pageSize;
+        shelfX = SOLID_SIZE + padding * 2;
+
+        for (char c = FIRST_PRELOADED; c <= LAST_PRELOADED; c++)
+            ascii[c] = place(c, bitmap, canvas);
+
+        //the texture uploads and recycles the bitmap
+        texture = new GLTexture(bitmap, 0, 0, 0);
+    }
+
+    /**
+     * Find a glyph, rasterizing it into the atlas if we haven't seen it before
+     * @param c character we want
+     * @return the glyph, or null if the atlas is full
+     */
+    public Glyph getGlyph(char c)
+    {
+        if (c <= LAST_PRELOADED && ascii[c] != null)
+            return ascii[c];
+        Glyph glyph = others.get(c);
+        if (glyph == null && !others.containsKey(c))
+        {
+            glyph = place(c, null, null);
+            others.put(c, glyph); //remember misses too so a full atlas isn't searched again
+        }
+        return glyph;
+    }
+
+    /**
+     * Returns whether every character of a string can be drawn from the atlas
+     * @param text text we want to draw
+     * @return true if nothing is missing
+     */
+    public boolean canDraw(String text)
+    {
+        for (int i = 0; i < text.length(); i++)
+            if (getGlyph(text.charAt(i)) == null)
+                return false;
+        return true;
+    }
+
+    /**
+     * How wide a string is when drawn
+     * @param text text to measure, every glyph must be available
+     * @return width in pixels
+     */
+    public float measure(String text)
+    {
+        float width = 0;
+        for (int i = 0; i < text.length(); i++)
+        {
+            Glyph glyph = getGlyph(text.charAt(i));
+            if (glyph != null)
+                width += glyph.advance;
+        }
+        return width;
+    }
+
+    /**
+     * Write the quads of a string into the clones of an object, one per character plus one for
+     * the underline.  Nothing but vertex data changes, the object draws from the atlas texture
+     * @param text text to draw, every glyph must be available
+     * @param left where the pen starts
+     * @param baseline where the baseline sits
+     * @param underline whether to underline the text
+     * @param target object whose clones we write
+     */
+    public void layout(String text, float left, float baseline, boolean underline, GLObject target)
+    {
+        layout(text, left, baseline, 1, underline, target);
+    }
+
+    /**
+     * Write the quads of a string scaled from the size of the atlas, used to draw a distance
+     * field atlas at other sizes
+     * @param text text to draw, every glyph must be available
+     * @param left where the pen starts
+     * @param baseline where the baseline sits
+     * @param scale size we draw at divided by the size of the atlas
+     * @param underline whether to underline the text
+     * @param target object whose clones we write
+     */
+    public void layout(String text, float left, float baseline, float scale, boolean underline, GLObject target)
+    {
+        int clones = text.length() + (underline ? 1 : 0);
+        target.setCloneCount(Math.max(clones, 1));
+        target.setTextureID(texture.getTextureID());
+
+        float bottom = baseline - (cellHeight - padding - ascent) * scale;
+        float pen = left;
+        for (int i = 0; i < text.length(); i++)
+        {
+            Glyph glyph = getGlyph(text.charAt(i));
+            if (glyph == null)
+            {
+                target.setCloneDimensions(i, pen, bottom, 0, 0);
+                continue;
+            }
+            target.setCloneDimensions(i, pen + glyph.left * scale, bottom, glyph.width * scale, cellHeight * scale);
+            target.setCloneTextureRegion(i, glyph.u0, glyph.v0, glyph.u1, glyph.v1);
+            pen += glyph.advance * scale;
+        }
+
+        if (underline)
+        {
+            float size = paint.getTextSize() * scale;
+            float thickness = Math.max(1, size / 18f);
+            target.setCloneDimensions(text.length(), left, baseline - size / 9f - thickness,
+                    pen - left, thickness);
+            target.setCloneTextureRegion(text.length(), solidU, solidV, solidU, solidV);
+        }
+        else if (clones == 0)
+            target.setCloneDimensions(0, left, bottom, 0, 0);
+    }
+
+    /**
+     * Distance from the baseline to the top of the tallest glyph
+     * @return ascent in pixels
+     */
+    public float getAscent()
+    {
+        return ascent;
+    }
+
+    /**
+     * Distance from the baseline to the bottom of the lowest glyph
+     * @return descent in pixels
+     */
+    public float getDescent()
+    {
+        return descent;
+    }
+
+    /**
+     * Height of a line of text
+     * @return line height in pixels
+     */
+    public float getLineHeight()
+    {
+        return ascent + descent;
+    }
+
+    /**
+     * Size the glyphs were rasterized at, the metrics are all for this size
+     * @return font size
+     */
+    public float getFontSize()
+    {
+        return paint.getTextSize();
+    }
+
+    /**
+     * Returns whether the atlas holds distance fields rather than coverage
+     * @return true for a distance field atlas
+     */
+    public boolean isDistanceField()
+    {
+        return distanceField;
+    }
+
+    /**
+     * The texture holding the glyphs
+     * @return texture ID
+     */
+    public int getTextureID()
+    {
+        return texture.getTextureID();
+    }
+
+    /**
+     * How wide the cell of a glyph is, covering its advance and anything drawn past it
+     */
+    private int cellWidth(char c)
+    {
+        single[0] = c;
+        paint.getTextBounds(single, 0, 1, bounds);
+        float advance = paint.measureText(single, 0, 1);
+        return (int) Math.ceil(Math.max(advance, bounds.right)) - Math.min(0, bounds.left) + padding * 2;
+    }
+
+    /**
+     * Reserve room for a glyph and rasterize it
+     * @param c character to place
+     * @param page the whole page while building it, null to upload straight into the texture
+     * @param canvas canvas drawing into the page
+     * @return the glyph, or null if there is no room left
+     */
+    private Glyph place(char c, Bitmap page, Canvas canvas)
+    {
+        int width = cellWidth(c);
+        int originX = -Math.min(0, bounds.left) + padding; //pen position inside the cell
+        float advance = paint.measureText(single, 0, 1);
+
+        if (shelfX + width > pageSize)
+        {
+            shelfX = 0;
+            shelfY += cellHeight;
+        }
+        if (shelfY + cellHeight > pageSize || width > pageSize)
+            return null;
+
+        int x = shelfX;
+        int y = shelfY;
+        shelfX += width;
+
+        if (page != null && !distanceField)
+            canvas.drawText(single, 0, 1, x + originX, y + padding + ascent, paint);
+        else
+        {
+            if (page == null)
+                FrameStats.countRasterization();
+            Bitmap bitmap = Bitmap.createBitmap(width, cellHeight, Bitmap.Config.ARGB_8888);
+            bitmap.eraseColor(0);
+            new Canvas(bitmap).drawText(single, 0, 1, originX, padding + ascent, paint);
+            int[] pixels = null;
+            if (distanceField)
+            {
+                pixels = new int[width * cellHeight];
+                bitmap.getPixels(pixels, 0, width, 0, 0, width, cellHeight);
+                toDistanceField(pixels, width, cellHeight);
+                bitmap.setPixels(pixels, 0, width, 0, 0, width, cellHeight);
+            }
+
+            if (page != null)
+                page.setPixels(pixels, 0, width, x, y, width, cellHeight);
+            else
+            {
+                GLState.bindTexture(0, texture.getTextureID());
+                ScreenConfiguration.gl.texSubImage2D(GLES20.GL_TEXTURE_2D, 0, x, y, bitmap);
+                FrameStats.countTextureUpload();
+            }
+            bitmap.recycle();
+        }
+
+        return new Glyph(advance, -originX, width, (float) x / pageSize, (float) y / pageSize,
+                (float) (x + width) / pageSize, (float) (y + cellHeight) / pageSize);
+    }
+
+    /**
+     * Replace the coverage of a glyph with its signed distance field.  Alpha 0.5 sits on the
+     * edge, rising inside the glyph and falling outside it, reaching 1 and 0 at
+     * DISTANCE_FIELD_SPREAD texels.  Colour is left white, the shader supplies it
+     * @param pixels pixels of the glyph, replaced in place
+     * @param width width of the glyph cell
+     * @param height height of the glyph cell
+     */
+    private static void toDistanceField(int[] pixels, int width, int height)
+    {
+        int size = width * height;
+        float[] toInside = new float[size];
+        float[] toOutside = new float[size];
+        for (int i = 0; i < size; i++)
+        {
+            boolean inside = (pixels[i] >>> 24) >= 128;
+            toInside[i] = inside ? 0 : FAR;
+            toOutside[i] = inside ? FAR : 0;
+        }
+        squaredDistances(toInside, width, height);
+        squaredDistances(toOutside, width, height);
+
+        for (int i = 0; i < size; i++)
+        {
+            //measured between pixel centres, so the edge is half a pixel from either side
+            float distance = toInside[i] == 0 ? (float) Math.sqrt(toOutside[i]) - 0.5f
+                    : 0.5f - (float) Math.sqrt(toInside[i]);
+            float value = 0.5f + distance / (2 * DISTANCE_FIELD_SPREAD);
+            int alpha = Math.round(Math.max(0, Math.min(1, value)) * 255);
+            pixels[i] = (alpha << 24) | 0xFFFFFF;
+        }
+    }
+
+    /**
+     * Turn a grid of 0 (a pixel we measure to) and FAR into the squared distance to the nearest
+     * 0, done exactly with one pass down every column then one along every row (Felzenszwalb
+     * and Huttenlocher)
+     * @param grid grid of values, replaced in place
+     * @param width columns in the grid
+     * @param height rows in the grid
+     */
+    private static void squaredDistances(float[] grid, int width, int height)
+    {
+        int longest = Math.max(width, height);
+        float[] line = new float[longest];
+        float[] result = new float[longest];
+        int[] parabolas = new int[longest];
+        float[] boundaries = new float[longest + 1];
+
+        for (int x = 0; x < width; x++)
+        {
+            for (int y = 0; y < height; y++)
+                line[y] = grid[y * width + x];
+            squaredDistances(line, height, result, parabolas, boundaries);
+            for (int y = 0; y < height; y++)
+                grid[y * width + x] = result[y];
+        }
+        for (int y = 0; y < height; y++)
+        {
+            System.arraycopy(grid, y * width, line, 0, width);
+            squaredDistances(line, width, result, parabolas, boundaries);
+            System.arraycopy(result, 0, grid, y * width, width);
+        }
+    }
+
+    /**
+     * One dimensional squared distance transform, the lower envelope of the parabolas rooted at
+     * every sample
+     */
+    private static void squaredDistances(float[] f, int n, float[] d, int[] v, float[] z)
+    {
+        int k = 0;
+        v[0] = 0;
+        z[0] = -FAR;
+        z[1] = FAR;
+        for (int q = 1; q < n; q++)
+        {
+            float s = ((f[q] + q * q) - (f[v[k]] + v[k] * v[k])) / (2 * q - 2 * v[k]);
+            while (s <= z[k])
+            {
+                k--;
+                s = ((f[q] + q * q) - (f[v[k]] + v[k] * v[k])) / (2 * q - 2 * v[k]);
+            }
+            k++;
+            v[k] = q;
+            z[k] = s;
+            z[k + 1] = FAR;
+        }
+
+        k = 0;
+        for (int q = 0; q < n; q++)
+        {
+            while (z[k + 1] < q)
+                k++;
+            d[q] = (q - v[k]) * (q - v[k]) + f[v[k]];
+        }
+    }
+}
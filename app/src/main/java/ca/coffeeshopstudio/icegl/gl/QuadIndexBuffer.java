@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.coffeeshopstudio.icegl.gl;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * The one index buffer shared by every quad the library draws.  Every quad uses the same
+ * 0,1,2,0,2,3 pattern, so instead of each GLObject building its own copy we keep a single list,
+ * sized to the largest number of quads anyone has asked for, both in memory and on the GPU.
+ */
+public class QuadIndexBuffer
+{
+    //most quads we can address with unsigned short indices
+    public static final int MAX_QUADS = 16384;
+    public static final int INDICES_PER_QUAD = 6;
+    private static final int BYTES_PER_SHORT = 2;
+
+    private static ShortBuffer indices;
+    private static int quadCapacity = 0;
+
+    //the buffer object holding the same indices on the GPU
+    private static final int[] bufferID = new int[1];
+    private static int uploadedQuads = 0;
+
+    /**
+     * Make sure the shared list can index at least the specified number of quads.  Grows
+     * geometrically and never beyond MAX_QUADS - larger objects are drawn in several ranges
+     * @param quads how many quads we need to draw at once
+     */
+    public static synchronized void ensureCapacity(int quads)
+    {
+        if (quads > MAX_QUADS)
+            quads = MAX_QUADS;
+        if (quads <= quadCapacity)
+            return;
+
+        int capacity = Math.min(MAX_QUADS, Math.max(quads, quadCapacity * 2));
+        ByteBuffer dlb = ByteBuffer.allocateDirect(capacity * INDICES_PER_QUAD * BYTES_PER_SHORT);
+        dlb.order(ByteOrder.nativeOrder());
+        ShortBuffer grown = dlb.asShortBuffer();
+
+        // normal quad = 0,1,2,0,2,3 so the next one will be 4,5,6,4,6,7
+        for (int i = 0; i < capacity; i++)
+        {
+            short last = (short) (i * 4);
+            grown.put(last);
+            grown.put((short) (last + 1));
+            grown.put((short) (last + 2));
+            grown.put(last);
+            grown.put((short) (last + 2));
+            grown.put((short) (last + 3));
+        }
+        grown.position(0);
+
+        indices = grown;
+        quadCapacity = capacity;
+    }
+
+    /**
+     * How many quads the shared list can currently index
+     * @return quad capacity
+     */
+    public static synchronized int getCapacity()
+    {
+        return quadCapacity;
+    }
+
+    /**
+     * Returns the client side copy of the indices
+     * @return indices for every quad up to the current capacity
+     */
+    public static synchronized ShortBuffer getIndices()
+    {
+        indices.position(0);
+        return indices;
+    }
+
+    /**
+     * Bind the shared buffer object to GL_ELEMENT_ARRAY_BUFFER, creating or growing it first if
+     * needed.  Must be called on the GL thread
+     * @param quads how many quads we are about to draw
+     */
+    public static synchronized void bind(int quads)
+    {
+        ensureCapacity(quads);
+
+        if (bufferID[0] == 0)
+        {
+            ScreenConfiguration.gl.glGenBuffers(1, bufferID, 0);
+            uploadedQuads = 0;
+        }
+
+        GLState.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, bufferID[0]);
+        if (uploadedQuads < quadCapacity)
+        {
+            indices.position(0);
+            ScreenConfiguration.gl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, quadCapacity * INDICES_PER_QUAD * BYTES_PER_SHORT,
+                    indices, GLES20.GL_STATIC_DRAW);
+            uploadedQuads = quadCapacity;
+        }
+    }
+
+    /**
+     * The GL context was recreated so the buffer object is gone - upload again on the next bind
+     */
+    public static synchronized void invalidate()
+    {
+        bufferID[0] = 0;
+        uploadedQuads = 0;
+    }
+}
@@ -0,0 +1,587 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ca.coffeeshopstudio.icegl.gl;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Headless backend that draws nothing and counts every call instead, along with the bytes
+ * uploaded and the indices drawn, so the GL cost of a frame can be measured on a plain JVM.
+ * Vertex data drawn straight from client memory is counted apart from the uploads, since the
+ * driver copies it again on every draw.  Draws are assumed to use the QuadIndexBuffer layout.
+ * Install it as ScreenConfiguration.gl and call GLState.invalidate() before rendering, then
+ * reset() between frames.  With setRecordCalls(true) each call is also kept as text.
+ *
+ * Generated names count up from 1 and every shader compiles and links.  Uniforms and attributes
+ * are read from the shader sources so programs find their locations as they would on a device.
+ */
+public class RecordingGLBackend implements GLBackend
+{
+    private static final int MAX_ATTRIBUTES = 16;
+    private static final Pattern DECLARATION = Pattern.compile("\\b(uniform|attribute)\\s+\\w+\\s+(?:\\w+\\s+)?(\\w+)");
+
+    private final Map<String, int[]> counts = new HashMap<>();
+    private final List<String> calls = new ArrayList<>();
+    private boolean recordCalls = false;
+    private long bytesUploaded = 0;
+    private long clientBytes = 0;
+    private int drawCalls = 0;
+    private long indicesDrawn = 0;
+
+    //fake GL objects, enough to let programs link and resolve their locations
+    private int nextName = 1;
+    private final Map<Integer, String> shaderSources = new HashMap<>();
+    private final Map<Integer, List<Integer>> attachedShaders = new HashMap<>();
+    private final Map<Integer, List<String>> uniforms = new HashMap<>();
+    private final Map<Integer, List<String>> attributes = new HashMap<>();
+
+    //vertex attribute state, for the bytes a draw reads from client memory
+    private final boolean[] attributeEnabled = new boolean[MAX_ATTRIBUTES];
+    private final int[] clientStride = new int[MAX_ATTRIBUTES]; //0 when the attribute reads a buffer object
+
+    /**
+     * Keep a text copy of every call from now on
+     * @param recordCalls true to keep the calls, see getCalls
+     */
+    public void setRecordCalls(boolean recordCalls)
+    {
+        this.recordCalls = recordCalls;
+    }
+
+    /**
+     * Forget the counts and recorded calls, the GL objects created so far are kept
+     */
+    public void reset()
+    {
+        counts.clear();
+        calls.clear();
+        bytesUploaded = 0;
+        clientBytes = 0;
+        drawCalls = 0;
+        indicesDrawn = 0;
+    }
+
+    /**
+     * How many times a call was made since the last reset
+     * @param name name of the call, such as glBindBuffer
+     * @return call count
+     */
+    public int getCallCount(String name)
+    {
+        int[] count = counts.get(name);
+        return count == null ? 0 : count[0];
+    }
+
+    /**
+     * Every call made since the last reset and how often, sorted by name
+     * @return call counts
+     */
+    public Map<String, Integer> getCallCounts()
+    {
+        Map<String, Integer> sorted = new TreeMap<>();
+        for (Map.Entry<String, int[]> entry : counts.entrySet())
+            sorted.put(entry.getKey(), entry.getValue()[0]);
+        return sorted;
+    }
+
+    /**
+     * How many calls of any kind were made since the last reset
+     * @return total call count
+     */
+    public int getTotalCalls()
+    {
+        int total = 0;
+        for (int[] count : counts.values())
+            total += count[0];
+        return total;
+    }
+
+    /**
+     * Bytes sent to buffer objects and textures since the last reset
+     * @return bytes uploaded
+     */
+    public long getBytesUploaded()
+    {
+        return bytesUploaded;
+    }
+
+    /**
+     * Bytes of client side vertex arrays read by draws since the last reset.  These are copied
+     * to the GPU on every draw, unlike the uploads to buffer objects
+     * @return bytes read from client memory
+     */
+    public long getClientBytes()
+    {
+        return clientBytes;
+    }
+
+    /**
+     * Draw calls made since the last reset
+     * @return draw call count
+     */
+    public int getDrawCalls()
+    {
+        return drawCalls;
+    }
+
+    /**
+     * Indices drawn since the last reset, six per quad
+     * @return index count
+     */
+    public long getIndicesDrawn()
+    {
+        return indicesDrawn;
+    }
+
+    /**
+     * The calls made since the last reset while recording
+     * @return calls in the order they were made
+     */
+    public List<String> getCalls()
+    {
+        return calls;
+    }
+
+    /**
+     * Count a call and record it if we are recording
+     * @param name name of the call
+     * @param args arguments, only turned into text when recording
+     */
+    private void count(String name, Object... args)
+    {
+        int[] count = counts.get(name);
+        if (count == null)
+            counts.put(name, count = new int[1]);
+        count[0]++;
+
+        if (recordCalls)
+        {
+            StringBuilder call = new StringBuilder(name).append('(');
+            for (int i = 0; i < args.length; i++)
+            {
+                if (i > 0)
+                    call.append(", ");
+                call.append(args[i]);
+            }
+            calls.add(call.append(')').toString());
+        }
+    }
+
+    @Override
+    public void glActiveTexture(int texture)
+    {
+        count("glActiveTexture", texture);
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader)
+    {
+        count("glAttachShader", program, shader);
+        List<Integer> shaders = attachedShaders.get(program);
+        if (shaders == null)
+            attachedShaders.put(program, shaders = new ArrayList<>());
+        shaders.add(shader);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer)
+    {
+        count("glBindBuffer", target, buffer);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture)
+    {
+        count("glBindTexture", target, texture);
+    }
+
+    @Override
+    public void glBlendFunc(int sfactor, int dfactor)
+    {
+        count("glBlendFunc", sfactor, dfactor);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage)
+    {
+        count("glBufferData", target, size, usage);
+        if (data != null)
+            bytesUploaded += size;
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data)
+    {
+        count("glBufferSubData", target, offset, size);
+        bytesUploaded += size;
+    }
+
+    @Override
+    public void glClear(int mask)
+    {
+        count("glClear", mask);
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha)
+    {
+        count("glClearColor", red, green, blue, alpha);
+    }
+
+    @Override
+    public void glCompileShader(int shader)
+    {
+        count("glCompileShader", shader);
+    }
+
+    @Override
+    public int glCreateProgram()
+    {
+        count("glCreateProgram");
+        return nextName++;
+    }
+
+    @Override
+    public int glCreateShader(int type)
+    {
+        count("glCreateShader", type);
+        return nextName++;
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset)
+    {
+        count("glDeleteBuffers", n);
+    }
+
+    @Override
+    public void glDeleteProgram(int program)
+    {
+        count("glDeleteProgram", program);
+        attachedShaders.remove(program);
+        uniforms.remove(program);
+        attributes.remove(program);
+    }
+
+    @Override
+    public void glDeleteShader(int shader)
+    {
+        count("glDeleteShader", shader);
+        shaderSources.remove(shader);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset)
+    {
+        count("glDeleteTextures", n);
+    }
+
+    @Override
+    public void glDisable(int cap)
+    {
+        count("glDisable", cap);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index)
+    {
+        count("glDisableVertexAttribArray", index);
+        if (index >= 0 && index < MAX_ATTRIBUTES)
+            attributeEnabled[index] = false;
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset)
+    {
+        count("glDrawElements", mode, count, type, offset);
+        drawCalls++;
+        indicesDrawn += count;
+
+        //every quad reads four vertices through its six indices
+        long vertices = count / QuadIndexBuffer.INDICES_PER_QUAD * 4;
+        for (int i = 0; i < MAX_ATTRIBUTES; i++)
+            if (attributeEnabled[i])
+                clientBytes += vertices * clientStride[i];
+    }
+
+    @Override
+    public void glEnable(int cap)
+    {
+        count("glEnable", cap);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index)
+    {
+        count("glEnableVertexAttribArray", index);
+        if (index >= 0 && index < MAX_ATTRIBUTES)
+            attributeEnabled[index] = true;
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset)
+    {
+        count("glGenBuffers", n);
+        for (int i = 0; i < n; i++)
+            buffers[offset + i] = nextName++;
+    }
+
+    @Override
+    public void glGenTextures(int n, IntBuffer textures)
+    {
+        count("glGenTextures", n);
+        for (int i = 0; i < n; i++)
+            textures.put(textures.position() + i, nextName++);
+    }
+
+    @Override
+    public void glGetActiveAttrib(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size,
+                                  int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset)
+    {
+        count("glGetActiveAttrib", program, index);
+        size[sizeOffset] = 1;
+        copyName(declared(attributes, program).get(index), bufsize, length, lengthOffset, name, nameOffset);
+    }
+
+    @Override
+    public void glGetActiveUniform(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size,
+                                   int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset)
+    {
+        count("glGetActiveUniform", program, index);
+        size[sizeOffset] = 1;
+        copyName(declared(uniforms, program).get(index), bufsize, length, lengthOffset, name, nameOffset);
+    }
+
+    /**
+     * Length of the longest name in a list
+     */
+    private static int longestName(List<String> names)
+    {
+        int longest = 0;
+        for (String name : names)
+            longest = Math.max(longest, name.length());
+        return longest;
+    }
+
+    /**
+     * Write a name the way GL does, truncated to the buffer and null terminated
+     */
+    private static void copyName(String value, int bufsize, int[] length, int lengthOffset, byte[] name, int nameOffset)
+    {
+        int copied = Math.max(0, Math.min(value.length(), bufsize - 1));
+        for (int i = 0; i < copied; i++)
+            name[nameOffset + i] = (byte) value.charAt(i);
+        if (bufsize > 0)
+            name[nameOffset + copied] = 0;
+        length[lengthOffset] = copied;
+    }
+
+    /**
+     * Size of one component of a vertex attribute
+     */
+    private static int componentBytes(int type)
+    {
+        switch (type)
+        {
+            case GLES20.GL_FLOAT:
+            case GLES20.GL_FIXED:
+                return 4;
+            case GLES20.GL_SHORT:
+            case GLES20.GL_UNSIGNED_SHORT:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name)
+    {
+        count("glGetAttribLocation", program, name);
+        return declared(attributes, program).indexOf(name);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset)
+    {
+        count("glGetProgramiv", program, pname);
+        switch (pname)
+        {
+            case GLES20.GL_ACTIVE_UNIFORMS:
+                params[offset] = declared(uniforms, program).size();
+                break;
+            case GLES20.GL_ACTIVE_ATTRIBUTES:
+                params[offset] = declared(attributes, program).size();
+                break;
+            case GLES20.GL_ACTIVE_UNIFORM_MAX_LENGTH:
+                params[offset] = longestName(declared(uniforms, program)) + 1;
+                break;
+            case GLES20.GL_ACTIVE_ATTRIBUTE_MAX_LENGTH:
+                params[offset] = longestName(declared(attributes, program)) + 1;
+                break;
+            default:
+                params[offset] = 1; //link status and anything else we are asked reports success
+                break;
+        }
+    }
+
+    @Override
+    public String glGetShaderInfoLog(int shader)
+    {
+        count("glGetShaderInfoLog", shader);
+        return "";
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset)
+    {
+        count("glGetShaderiv", shader, pname);
+        params[offset] = 1; //every shader compiles
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name)
+    {
+        count("glGetUniformLocation", program, name);
+        return declared(uniforms, program).indexOf(name);
+    }
+
+    @Override
+    public void glLinkProgram(int program)
+    {
+        count("glLinkProgram", program);
+        List<String> programUniforms = new ArrayList<>();
+        List<String> programAttributes = new ArrayList<>();
+        List<Integer> shaders = attachedShaders.get(program);
+        if (shaders != null)
+        {
+            for (Integer shader : shaders)
+            {
+                String source = shaderSources.get(shader);
+                if (source == null)
+                    continue;
+                Matcher matcher = DECLARATION.matcher(source);
+                while (matcher.find())
+                {
+                    List<String> names = matcher.group(1).equals("uniform") ? programUniforms : programAttributes;
+                    if (!names.contains(matcher.group(2)))
+                        names.add(matcher.group(2));
+                }
+            }
+        }
+        uniforms.put(program, programUniforms);
+        attributes.put(program, programAttributes);
+    }
+
+    @Override
+    public void glShaderSource(int shader, String string)
+    {
+        count("glShaderSource", shader);
+        shaderSources.put(shader, string);
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param)
+    {
+        count("glTexParameteri", target, pname, param);
+    }
+
+    @Override
+    public void glUniform1f(int location, float x)
+    {
+        count("glUniform1f", location, x);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x)
+    {
+        count("glUniform1i", location, x);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w)
+    {
+        count("glUniform4f", location, x, y, z, w);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset)
+    {
+        count("glUniformMatrix4fv", location, count);
+    }
+
+    @Override
+    public void glUseProgram(int program)
+    {
+        count("glUseProgram", program);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, Buffer ptr)
+    {
+        count("glVertexAttribPointer", index, size, type, normalized, stride, "client");
+        if (index >= 0 && index < MAX_ATTRIBUTES)
+            clientStride[index] = stride != 0 ? stride : size * componentBytes(type);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset)
+    {
+        count("glVertexAttribPointer", index, size, type, normalized, stride, offset);
+        if (index >= 0 && index < MAX_ATTRIBUTES)
+            clientStride[index] = 0;
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height)
+    {
+        count("glViewport", x, y, width, height);
+    }
+
+    @Override
+    public void texImage2D(int target, int level, Bitmap bitmap, int border)
+    {
+        count("texImage2D", target, level, bitmap.getWidth(), bitmap.getHeight());
+        bytesUploaded += bitmap.getByteCount();
+    }
+
+    @Override
+    public void texSubImage2D(int target, int level, int xoffset, int yoffset, Bitmap bitmap)
+    {
+        count("texSubImage2D", target, level, xoffset, yoffset, bitmap.getWidth(), bitmap.getHeight());
+        bytesUploaded += bitmap.getByteCount();
+    }
+
+    /**
+     * The uniforms or attributes a linked program declared
+     */
+    private static List<String> declared(Map<Integer, List<String>> declarations, int program)
+    {
+        List<String> names = declarations.get(program);
+        return names == null ? new ArrayList<String>() : names;
+    }
+}
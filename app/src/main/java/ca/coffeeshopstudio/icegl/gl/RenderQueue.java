@@ -0,0 +1,318 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.coffeeshopstudio.icegl.gl;
+
+import ca.coffeeshopstudio.icegl.programs.Program;
+
+/**
+ * Collects everything the controls want drawn during a frame as commands with a 64 bit sort
+ * key, sorts them and replays them into the sprite batch.  Commands that share a program and
+ * texture end up next to each other, across controls as long as they don't overlap, so the
+ * batch has far fewer reasons to flush.
+ *
+ * The key, from the most significant bits down, is:
+ *   layer (7 bits)      - explicit draw order, higher layers always draw on top
+ *   depth (16 bits)     - overlap depth of the control within its layer
+ *   pass (4 bits)       - which GL object of a control this is, backgrounds before text
+ *   program (8 bits)    - shader program
+ *   texture (20 bits)   - texture the command samples
+ * The screen gives controls that overlap nothing beneath them depth 0, and every other control
+ * one more than the deepest control it overlaps.  Controls only need to keep their order
+ * against the controls they overlap, so everything sharing a depth is free to be grouped by
+ * program and texture.  The sort is stable, so commands with equal keys keep the order they
+ * were submitted in.
+ * The arrays are reused between frames so a steady scene sorts without allocating.
+ */
+public class RenderQueue
+{
+    public static final int LAYER_BACKGROUND = 0; //backdrops and tile maps
+    public static final int LAYER_SPRITES = 32; //sprites, above the backdrops
+    public static final int LAYER_DEFAULT = 64; //regular controls
+    public static final int LAYER_DIALOG = 120; //modal windows and their buttons
+    public static final int MAX_LAYER = 127;
+    public static final int MAX_PASS = 15;
+    public static final int MAX_DEPTH = 0xFFFF;
+
+    private static final int LAYER_SHIFT = 48;
+    private static final int DEPTH_SHIFT = 32;
+    private static final int PASS_SHIFT = 28;
+    private static final int PROGRAM_SHIFT = 20;
+    private static final long PROGRAM_MASK = 0xFF;
+    private static final long TEXTURE_MASK = 0xFFFFF;
+
+    private static final int DEFAULT_CAPACITY = 256;
+    private static final int FLOATS_PER_QUAD = 8; //left, bottom, width, height, u0, v0, u1, v1
+
+    //one entry per command, indexed by submission order
+    private GLObject[] objects;
+    private Program[] programs;
+    private int[] textures;
+    private float[] quads;
+    private long[] keys;
+
+    //sort buffers, hold the command index alongside its key
+    private long[] sortKeys;
+    private int[] order;
+    private long[] scratchKeys;
+    private int[] scratchOrder;
+    private final int[] histogram = new int[256];
+
+    private int depth = 0; //depth given to the commands submitted next
+    private int count = 0;
+
+    /**
+     * Create a queue with room for the default number of commands, it grows as needed
+     */
+    public RenderQueue()
+    {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Forget the commands of the previous frame
+     */
+    public void begin()
+    {
+        count = 0;
+        depth = 0;
+    }
+
+    /**
+     * Set the depth of the commands submitted from now on, the screen calls this with the
+     * overlap depth of each control before the control draws
+     * @param depth 0 to MAX_DEPTH, higher depths draw on top within a layer
+     */
+    public void setDepth(int depth)
+    {
+        this.depth = depth;
+    }
+
+    /**
+     * Queue a GL Object to be drawn with all of its clones
+     * @param glo object to draw
+     * @param layer draw layer, 0 to MAX_LAYER
+     * @param pass which object of its control this is, 0 to MAX_PASS
+     */
+    public void submit(GLObject glo, int layer, int pass)
+    {
+        int index = add(glo.getProgram(), glo.textureID, layer, pass);
+        objects[index] = glo;
+    }
+
+    /**
+     * Queue a single quad
+     * @param program shader program used to draw the quad
+     * @param textureID texture the quad is drawn from
+     * @param layer draw layer, 0 to MAX_LAYER
+     * @param left left edge of the quad on the screen
+     * @param bottom bottom edge of the quad on the screen
+     * @param width how wide the quad is
+     * @param height how tall the quad is
+     * @param u0 left edge inside the texture, 0 to 1
+     * @param v0 top edge inside the texture, 0 to 1
+     * @param u1 right edge inside the texture, 0 to 1
+     * @param v1 bottom edge inside the texture, 0 to 1
+     */
+    public void submitQuad(Program program, int textureID, int layer, float left, float bottom, float width, float height,
+                           float u0, float v0, float u1, float v1)
+    {
+        int index = add(program, textureID, layer, 0);
+        objects[index] = null;
+        int q = index * FLOATS_PER_QUAD;
+        quads[q] = left;
+        quads[q + 1] = bottom;
+        quads[q + 2] = width;
+        quads[q + 3] = height;
+        quads[q + 4] = u0;
+        quads[q + 5] = v0;
+        quads[q + 6] = u1;
+        quads[q + 7] = v1;
+    }
+
+    /**
+     * Sort the queued commands and replay them into a batch that has already begun
+     * @param batch batch we are drawing through
+     */
+    public void execute(SpriteBatch batch)
+    {
+        sort();
+        for (int i = 0; i < count; i++)
+        {
+            int index = order[i];
+            if (objects[index] != null)
+            {
+                batch.draw(objects[index]);
+                objects[index] = null; //don't hold on to objects after the frame
+            }
+            else
+            {
+                int q = index * FLOATS_PER_QUAD;
+                batch.drawQuad(programs[index], textures[index], quads[q], quads[q + 1], quads[q + 2], quads[q + 3],
+                        quads[q + 4], quads[q + 5], quads[q + 6], quads[q + 7]);
+            }
+            programs[index] = null;
+        }
+        count = 0;
+    }
+
+    /**
+     * How many commands are queued
+     * @return command count
+     */
+    public int size()
+    {
+        return count;
+    }
+
+    /**
+     * Build the sort key for a command
+     * @param layer draw layer
+     * @param depth overlap depth of the control within its layer
+     * @param pass object index within its control
+     * @param programIndex index of the shader program
+     * @param textureID texture the command samples
+     * @return packed key
+     */
+    public static long buildKey(int layer, int depth, int pass, int programIndex, int textureID)
+    {
+        return ((long) clamp(layer, MAX_LAYER) << LAYER_SHIFT)
+                | ((long) clamp(depth, MAX_DEPTH) << DEPTH_SHIFT)
+                | ((long) clamp(pass, MAX_PASS) << PASS_SHIFT)
+                | ((programIndex & PROGRAM_MASK) << PROGRAM_SHIFT)
+                | (textureID & TEXTURE_MASK);
+    }
+
+    /**
+     * Record the common part of a command
+     * @return index of the new command
+     */
+    private int add(Program program, int textureID, int layer, int pass)
+    {
+        if (count == keys.length)
+            grow();
+        int index = count++;
+        programs[index] = program;
+        textures[index] = textureID;
+        keys[index] = buildKey(layer, depth, pass, program.getSortIndex(), textureID);
+        return index;
+    }
+
+    /**
+     * LSD radix sort of the keys, one byte at a time.  Each pass is stable, so equal keys keep
+     * their submission order.  Bytes every key shares are skipped, which in practice leaves
+     * only a few passes
+     */
+    private void sort()
+    {
+        long[] srcKeys = sortKeys;
+        int[] srcOrder = order;
+        long[] dstKeys = scratchKeys;
+        int[] dstOrder = scratchOrder;
+
+        long differing = 0;
+        for (int i = 0; i < count; i++)
+        {
+            srcKeys[i] = keys[i];
+            srcOrder[i] = i;
+            differing |= keys[i] ^ keys[0];
+        }
+
+        for (int shift = 0; shift < 64; shift += 8)
+        {
+            if (((differing >>> shift) & 0xFF) == 0)
+                continue;
+
+            for (int i = 0; i < 256; i++)
+                histogram[i] = 0;
+            for (int i = 0; i < count; i++)
+                histogram[(int) ((srcKeys[i] >>> shift) & 0xFF)]++;
+
+            int total = 0;
+            for (int i = 0; i < 256; i++)
+            {
+                int bucket = histogram[i];
+                histogram[i] = total;
+                total += bucket;
+            }
+
+            for (int i = 0; i < count; i++)
+            {
+                int digit = (int) ((srcKeys[i] >>> shift) & 0xFF);
+                int target = histogram[digit]++;
+                dstKeys[target] = srcKeys[i];
+                dstOrder[target] = srcOrder[i];
+            }
+
+            long[] swapKeys = srcKeys;
+            srcKeys = dstKeys;
+            dstKeys = swapKeys;
+            int[] swapOrder = srcOrder;
+            srcOrder = dstOrder;
+            dstOrder = swapOrder;
+        }
+
+        //whichever buffers hold the result become the ones we read from
+        sortKeys = srcKeys;
+        order = srcOrder;
+        scratchKeys = dstKeys;
+        scratchOrder = dstOrder;
+    }
+
+    /**
+     * Double the room for commands
+     */
+    private void grow()
+    {
+        GLObject[] oldObjects = objects;
+        Program[] oldPrograms = programs;
+        int[] oldTextures = textures;
+        float[] oldQuads = quads;
+        long[] oldKeys = keys;
+
+        allocate(keys.length * 2);
+        System.arraycopy(oldObjects, 0, objects, 0, count);
+        System.arraycopy(oldPrograms, 0, programs, 0, count);
+        System.arraycopy(oldTextures, 0, textures, 0, count);
+        System.arraycopy(oldQuads, 0, quads, 0, count * FLOATS_PER_QUAD);
+        System.arraycopy(oldKeys, 0, keys, 0, count);
+    }
+
+    /**
+     * Create every array with room for the specified number of commands
+     * @param capacity number of commands
+     */
+    private void allocate(int capacity)
+    {
+        objects = new GLObject[capacity];
+        programs = new Program[capacity];
+        textures = new int[capacity];
+        quads = new float[capacity * FLOATS_PER_QUAD];
+        keys = new long[capacity];
+        sortKeys = new long[capacity];
+        order = new int[capacity];
+        scratchKeys = new long[capacity];
+        scratchOrder = new int[capacity];
+    }
+
+    /**
+     * Keep a value between 0 and max
+     */
+    private static int clamp(int value, int max)
+    {
+        return value < 0 ? 0 : (value > max ? max : value);
+    }
+}
@@ -28,8 +28,14 @@ import ca.coffeeshopstudio.icegl.programs.ImageProgram;
  */
 public class ScreenConfiguration
 {
+    //every GL call goes through here, swap it before the surface is created to run headless
+    public static GLBackend gl = new GLES20Backend();
     //some built in shader programs used by the library
     public static ImageProgram imageProgram = new ImageProgram();
+    //batch every control on the screen is drawn through
+    public static SpriteBatch spriteBatch = new SpriteBatch();
+    //commands from every control, sorted before they reach the batch
+    public static RenderQueue renderQueue = new RenderQueue();
     private static boolean fullScreen = true;
 
     //used for the grid spacing
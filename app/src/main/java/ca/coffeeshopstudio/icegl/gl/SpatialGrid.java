@@ -0,0 +1,406 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.coffeeshopstudio.icegl.gl;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Uniform grid of cells used to find what sits under a point without testing everything.
+ * Each item is listed in every cell its bounds cover, so a lookup only checks the items of
+ * one cell.  Items that reach outside the grid are listed in the border cells they stick out
+ * of, and points outside the grid are looked up in the nearest border cell.  Updating an item
+ * only touches the cells it leaves and enters.
+ *
+ * Bounds are exclusive like the original touch tests: a point on an edge is outside.  When
+ * several items contain the point, the one with the highest priority wins, ties going to
+ * whichever was added (or had its priority set) last, the same one that is drawn on top.
+ *
+ * @param <T> type of the items we index
+ */
+public class SpatialGrid<T>
+{
+    /**
+     * Decides whether an item found under a point should be returned
+     * @param <T> type of the items we index
+     */
+    public interface Matcher<T>
+    {
+        /**
+         * @param item candidate containing the point
+         * @return true to accept it
+         */
+        boolean matches(T item);
+    }
+
+    /**
+     * Where an item is and which cells list it
+     */
+    private static class Entry<T>
+    {
+        T item;
+        float left;
+        float bottom;
+        float width;
+        float height;
+        int priority;
+        int order; //when the item was added or had its priority set
+        int search; //last overlap search that saw the item, so items in several cells count once
+        int firstColumn;
+        int firstRow;
+        int lastColumn;
+        int lastRow;
+    }
+
+    private final IdentityHashMap<T, Entry<T>> entries = new IdentityHashMap<>();
+    private List<List<Entry<T>>> cells = new ArrayList<>();
+    private int columns;
+    private int rows;
+    private float cellWidth;
+    private float cellHeight;
+    private int nextOrder = 0;
+    private int nextSearch = 0;
+
+    /**
+     * Create a grid starting at 0,0
+     * @param columns cells across
+     * @param rows cells down
+     * @param cellWidth how wide each cell is
+     * @param cellHeight how tall each cell is
+     * @throws IllegalArgumentException
+     */
+    public SpatialGrid(int columns, int rows, float cellWidth, float cellHeight)
+    {
+        resize(columns, rows, cellWidth, cellHeight);
+    }
+
+    /**
+     * Change the layout of the grid, every item is placed again
+     * @param columns cells across
+     * @param rows cells down
+     * @param cellWidth how wide each cell is
+     * @param cellHeight how tall each cell is
+     * @throws IllegalArgumentException
+     */
+    public synchronized void resize(int columns, int rows, float cellWidth, float cellHeight)
+    {
+        if (columns <= 0 || rows <= 0)
+            throw new IllegalArgumentException("grid must have at least one cell");
+        if (cellWidth <= 0 || cellHeight <= 0)
+            throw new IllegalArgumentException("cell size must be positive");
+
+        this.columns = columns;
+        this.rows = rows;
+        this.cellWidth = cellWidth;
+        this.cellHeight = cellHeight;
+
+        cells = new ArrayList<>(columns * rows);
+        for (int i = 0; i < columns * rows; i++)
+            cells.add(new ArrayList<Entry<T>>());
+        for (Entry<T> entry : entries.values())
+            place(entry);
+    }
+
+    /**
+     * Add an item, or move it if we already have it
+     * @param item item to place
+     * @param left left edge
+     * @param bottom bottom edge
+     * @param width how wide it is
+     * @param height how tall it is
+     */
+    public synchronized void update(T item, float left, float bottom, float width, float height)
+    {
+        Entry<T> entry = entries.get(item);
+        if (entry == null)
+        {
+            entry = new Entry<>();
+            entry.item = item;
+            entry.order = nextOrder++;
+            entries.put(item, entry);
+        }
+        else if (entry.left == left && entry.bottom == bottom && entry.width == width && entry.height == height)
+            return;
+        else
+        {
+            if (firstColumn(left) == entry.firstColumn && firstRow(bottom) == entry.firstRow
+                    && lastColumn(left + width) == entry.lastColumn && lastRow(bottom + height) == entry.lastRow)
+            {
+                //still in the same cells, only the bounds change
+                setBounds(entry, left, bottom, width, height);
+                return;
+            }
+            unplace(entry);
+        }
+        setBounds(entry, left, bottom, width, height);
+        place(entry);
+    }
+
+    /**
+     * Change which item wins when several contain the same point.  The item also moves in front
+     * of everything else sharing its priority
+     * @param item item we already have
+     * @param priority higher values win
+     */
+    public synchronized void setPriority(T item, int priority)
+    {
+        Entry<T> entry = entries.get(item);
+        if (entry != null)
+        {
+            entry.priority = priority;
+            entry.order = nextOrder++;
+        }
+    }
+
+    /**
+     * Stop indexing an item
+     * @param item item to remove
+     */
+    public synchronized void remove(T item)
+    {
+        Entry<T> entry = entries.remove(item);
+        if (entry != null)
+            unplace(entry);
+    }
+
+    /**
+     * Find the item under a point
+     * @param x horizontal position
+     * @param y vertical position
+     * @param matcher extra test each candidate must pass, or null to accept any
+     * @return highest priority item containing the point, or null
+     */
+    public synchronized T find(float x, float y, Matcher<T> matcher)
+    {
+        Entry<T> best = null;
+        best = best(cellAt(x, y), x, y, matcher, best);
+        return best == null ? null : best.item;
+    }
+
+    /**
+     * Collect every item under a point, highest priority first
+     * @param x horizontal position
+     * @param y vertical position
+     * @param out list the items are added to
+     */
+    public synchronized void findAll(float x, float y, List<T> out)
+    {
+        int start = out.size();
+        collect(cellAt(x, y), x, y, out, start);
+    }
+
+    /**
+     * Collect every other item whose bounds overlap an item's, in no particular order.  Items
+     * that only share an edge don't overlap
+     * @param item item we already have
+     * @param out list the items are added to
+     */
+    public synchronized void findOverlapping(T item, List<T> out)
+    {
+        Entry<T> entry = entries.get(item);
+        if (entry == null)
+            return;
+        int search = ++nextSearch;
+        entry.search = search;
+        for (int row = entry.firstRow; row <= entry.lastRow; row++)
+            for (int column = entry.firstColumn; column <= entry.lastColumn; column++)
+            {
+                List<Entry<T>> cell = cells.get(row * columns + column);
+                for (int i = 0; i < cell.size(); i++)
+                {
+                    Entry<T> candidate = cell.get(i);
+                    if (candidate.search == search)
+                        continue;
+                    candidate.search = search;
+                    if (overlaps(entry, candidate))
+                        out.add(candidate.item);
+                }
+            }
+    }
+
+    /**
+     * How many items we are indexing
+     * @return item count
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * How many cells list an item, lets tests check an item isn't indexed in cells it doesn't
+     * touch
+     * @param item item we already have
+     * @return cell count, 0 if we don't have the item
+     */
+    synchronized int getCellCount(T item)
+    {
+        Entry<T> entry = entries.get(item);
+        int listed = 0;
+        for (List<Entry<T>> cell : cells)
+            if (entry != null && cell.contains(entry))
+                listed++;
+        return listed;
+    }
+
+    /**
+     * Pick the better of the current best and the candidates of a list
+     */
+    private Entry<T> best(List<Entry<T>> candidates, float x, float y, Matcher<T> matcher, Entry<T> best)
+    {
+        for (int i = 0; i < candidates.size(); i++)
+        {
+            Entry<T> entry = candidates.get(i);
+            if (contains(entry, x, y) && (best == null || before(entry, best))
+                    && (matcher == null || matcher.matches(entry.item)))
+                best = entry;
+        }
+        return best;
+    }
+
+    /**
+     * Insert every candidate containing the point into the output, keeping it ordered
+     */
+    private void collect(List<Entry<T>> candidates, float x, float y, List<T> out, int start)
+    {
+        for (int i = 0; i < candidates.size(); i++)
+        {
+            Entry<T> entry = candidates.get(i);
+            if (!contains(entry, x, y))
+                continue;
+            //only a handful of items overlap one point, so an insertion sort is plenty
+            int position = out.size();
+            while (position > start && before(entry, entries.get(out.get(position - 1))))
+                position--;
+            out.add(position, entry.item);
+        }
+    }
+
+    /**
+     * Returns whether an entry beats another
+     */
+    private static boolean before(Entry<?> a, Entry<?> b)
+    {
+        if (a.priority != b.priority)
+            return a.priority > b.priority;
+        return a.order > b.order;
+    }
+
+    /**
+     * Returns whether a point is strictly inside an entry
+     */
+    private static boolean contains(Entry<?> entry, float x, float y)
+    {
+        return x > entry.left && x < entry.left + entry.width
+                && y > entry.bottom && y < entry.bottom + entry.height;
+    }
+
+    /**
+     * Returns whether two entries share more than an edge
+     */
+    private static boolean overlaps(Entry<?> a, Entry<?> b)
+    {
+        return a.left < b.left + b.width && b.left < a.left + a.width
+                && a.bottom < b.bottom + b.height && b.bottom < a.bottom + a.height;
+    }
+
+    /**
+     * Copy the bounds into an entry
+     */
+    private static void setBounds(Entry<?> entry, float left, float bottom, float width, float height)
+    {
+        entry.left = left;
+        entry.bottom = bottom;
+        entry.width = width;
+        entry.height = height;
+    }
+
+    /**
+     * List an entry in the cells its bounds cover, an empty entry covers none
+     */
+    private void place(Entry<T> entry)
+    {
+        entry.firstColumn = firstColumn(entry.left);
+        entry.firstRow = firstRow(entry.bottom);
+        entry.lastColumn = lastColumn(entry.left + entry.width);
+        entry.lastRow = lastRow(entry.bottom + entry.height);
+
+        for (int row = entry.firstRow; row <= entry.lastRow; row++)
+            for (int column = entry.firstColumn; column <= entry.lastColumn; column++)
+                cells.get(row * columns + column).add(entry);
+    }
+
+    /**
+     * Remove an entry from wherever place put it
+     */
+    private void unplace(Entry<T> entry)
+    {
+        for (int row = entry.firstRow; row <= entry.lastRow; row++)
+            for (int column = entry.firstColumn; column <= entry.lastColumn; column++)
+                cells.get(row * columns + column).remove(entry);
+    }
+
+    /**
+     * The cell under a point, or the nearest border cell if the point is outside the grid
+     */
+    private List<Entry<T>> cellAt(float x, float y)
+    {
+        return cells.get(firstRow(y) * columns + firstColumn(x));
+    }
+
+    /**
+     * Column holding a left edge, clamped into the grid
+     */
+    private int firstColumn(float left)
+    {
+        return clamp((int) Math.floor(left / cellWidth), columns);
+    }
+
+    /**
+     * Row holding a bottom edge, clamped into the grid
+     */
+    private int firstRow(float bottom)
+    {
+        return clamp((int) Math.floor(bottom / cellHeight), rows);
+    }
+
+    /**
+     * Last column inside a right edge, clamped into the grid.  The edge itself is exclusive so
+     * an edge on a cell boundary stops at the cell before it
+     */
+    private int lastColumn(float right)
+    {
+        return clamp((int) Math.ceil(right / cellWidth) - 1, columns);
+    }
+
+    /**
+     * Last row inside a top edge, clamped into the grid, the edge is exclusive
+     */
+    private int lastRow(float top)
+    {
+        return clamp((int) Math.ceil(top / cellHeight) - 1, rows);
+    }
+
+    /**
+     * Keep an index between 0 and count - 1
+     */
+    private static int clamp(int index, int count)
+    {
+        return index < 0 ? 0 : (index >= count ? count - 1 : index);
+    }
+}
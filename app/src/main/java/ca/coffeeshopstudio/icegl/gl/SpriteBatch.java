@@ -0,0 +1,321 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.coffeeshopstudio.icegl.gl;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import ca.coffeeshopstudio.icegl.programs.Program;
+
+/**
+ * Collects the quads of every GLObject drawn during a frame into one shared vertex stream.
+ * The stream is only sent to the GPU when the texture or program changes, or when it fills up,
+ * so a screen full of controls sharing an atlas costs a handful of draw calls.
+ *
+ * Custom controls can submit their own quads with drawQuad.  Anything that issues GL calls
+ * directly while a frame is being batched must call flush() first to keep the draw order, and
+ * GLState.invalidate() afterwards if it changed any state the batch relies on.
+ */
+public class SpriteBatch
+{
+    //most quads we can address with unsigned short indices
+    public static final int MAX_QUADS = QuadIndexBuffer.MAX_QUADS;
+    private static final int DEFAULT_QUADS = 1024;
+
+    private final int maxQuads;
+
+    //the shared interleaved stream every quad in the batch is written to
+    private ByteBuffer vertexStream;
+
+    private int quadCount = 0;
+    private Program currentProgram = null;
+    private int currentTextureID = -1;
+    private float[] matrixProjectionAndView;
+    private boolean drawing = false;
+
+    //how many times we actually called glDrawElements since the last begin
+    private int drawCalls = 0;
+    //how many quads we drew since the last begin
+    private int quadsDrawn = 0;
+    //how many frames we have begun, used to judge how often buffer objects change
+    private int frame = 0;
+
+    /**
+     * Create a batch that can hold the default number of quads before flushing
+     */
+    public SpriteBatch()
+    {
+        this(DEFAULT_QUADS);
+    }
+
+    /**
+     * Create a batch that can hold the specified number of quads before flushing
+     * @param maxQuads how many quads the shared stream can hold
+     * @throws IllegalArgumentException
+     */
+    public SpriteBatch(int maxQuads)
+    {
+        if (maxQuads <= 0 || maxQuads > MAX_QUADS)
+            throw new IllegalArgumentException("batch size must be between 1 and " + MAX_QUADS);
+        this.maxQuads = maxQuads;
+
+        vertexStream = ByteBuffer.allocateDirect(maxQuads * VertexFormat.BYTES_PER_QUAD);
+        vertexStream.order(ByteOrder.nativeOrder());
+        QuadIndexBuffer.ensureCapacity(maxQuads);
+    }
+
+    /**
+     * Start collecting quads for a new frame
+     * @param matrixProjectionAndView matrix representing our projection and view
+     */
+    public void begin(float[] matrixProjectionAndView)
+    {
+        this.matrixProjectionAndView = matrixProjectionAndView;
+        quadCount = 0;
+        currentProgram = null;
+        currentTextureID = -1;
+        drawCalls = 0;
+        quadsDrawn = 0;
+        frame++;
+        vertexStream.clear();
+        drawing = true;
+    }
+
+    /**
+     * Add all the clones of a GLObject to the batch
+     * @param glo object we are drawing
+     */
+    public void draw(GLObject glo)
+    {
+        if (!drawing || glo.bb == null)
+            return;
+
+        if (glo.getStorageMode() == GLObject.STORAGE_BUFFER_OBJECT)
+        {
+            drawBufferObject(glo);
+            return;
+        }
+
+        switchState(glo.getProgram(), glo.textureID);
+        quadsDrawn += glo.getCloneCount();
+
+        int remaining = glo.getCloneCount();
+        int offset = 0;
+        while (remaining > 0)
+        {
+            if (quadCount == maxQuads)
+                flush();
+            int count = Math.min(remaining, maxQuads - quadCount);
+            copyQuads(glo.bb, offset * VertexFormat.BYTES_PER_QUAD, count * VertexFormat.BYTES_PER_QUAD);
+            quadCount += count;
+            offset += count;
+            remaining -= count;
+        }
+    }
+
+    /**
+     * Add a single quad using the image program
+     * @param textureID texture the quad is drawn from
+     * @param left left edge of the quad on the screen
+     * @param bottom bottom edge of the quad on the screen
+     * @param width how wide the quad is
+     * @param height how tall the quad is
+     * @param u0 left edge inside the texture, 0 to 1
+     * @param v0 top edge inside the texture, 0 to 1
+     * @param u1 right edge inside the texture, 0 to 1
+     * @param v1 bottom edge inside the texture, 0 to 1
+     */
+    public void drawQuad(int textureID, float left, float bottom, float width, float height,
+                         float u0, float v0, float u1, float v1)
+    {
+        drawQuad(ScreenConfiguration.imageProgram, textureID, left, bottom, width, height, u0, v0, u1, v1);
+    }
+
+    /**
+     * Add a single quad drawn with the specified program
+     * @param program shader program used to draw the quad
+     * @param textureID texture the quad is drawn from
+     * @param left left edge of the quad on the screen
+     * @param bottom bottom edge of the quad on the screen
+     * @param width how wide the quad is
+     * @param height how tall the quad is
+     * @param u0 left edge inside the texture, 0 to 1
+     * @param v0 top edge inside the texture, 0 to 1
+     * @param u1 right edge inside the texture, 0 to 1
+     * @param v1 bottom edge inside the texture, 0 to 1
+     */
+    public void drawQuad(Program program, int textureID, float left, float bottom, float width, float height,
+                         float u0, float v0, float u1, float v1)
+    {
+        if (!drawing)
+            return;
+
+        switchState(program, textureID);
+        if (quadCount == maxQuads)
+            flush();
+
+        VertexFormat.putQuad(vertexStream, quadCount * VertexFormat.BYTES_PER_QUAD,
+                left, bottom, left + width, bottom + height, u0, v0, u1, v1);
+        vertexStream.position((quadCount + 1) * VertexFormat.BYTES_PER_QUAD);
+        quadCount++;
+        quadsDrawn++;
+    }
+
+    /**
+     * Send everything collected so far to the GPU
+     */
+    public void flush()
+    {
+        if (quadCount == 0 || currentProgram == null)
+            return;
+
+        GLState.useProgram(currentProgram.getProgramID());
+        applyUniforms(currentProgram, currentTextureID);
+
+        //client side vertices need the array buffer unbound
+        GLState.bindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        currentProgram.enableAttributes();
+        currentProgram.setAttributePointers(vertexStream);
+
+        QuadIndexBuffer.bind(quadCount);
+        ScreenConfiguration.gl.glDrawElements(GLES20.GL_TRIANGLES, quadCount * QuadIndexBuffer.INDICES_PER_QUAD, GLES20.GL_UNSIGNED_SHORT, 0);
+        drawCalls++;
+
+        quadCount = 0;
+        vertexStream.clear();
+    }
+
+    /**
+     * Draw an object straight from its buffer objects, uploading anything that changed first
+     * @param glo object we are drawing
+     */
+    private void drawBufferObject(GLObject glo)
+    {
+        //keep the draw order of anything already collected
+        flush();
+        currentProgram = glo.getProgram();
+        currentTextureID = glo.textureID;
+
+        glo.uploadBufferObjects(frame);
+
+        GLState.useProgram(currentProgram.getProgramID());
+        applyUniforms(currentProgram, currentTextureID);
+
+        currentProgram.enableAttributes();
+
+        //unsigned short indices only reach so far, so very large objects are drawn in ranges
+        int remaining = glo.getCloneCount();
+        int offset = 0;
+        quadsDrawn += remaining;
+        QuadIndexBuffer.bind(Math.min(remaining, MAX_QUADS));
+        GLState.bindBuffer(GLES20.GL_ARRAY_BUFFER, glo.getBufferID());
+        while (remaining > 0)
+        {
+            int count = Math.min(remaining, MAX_QUADS);
+
+            currentProgram.setAttributePointers(offset * VertexFormat.BYTES_PER_QUAD);
+            ScreenConfiguration.gl.glDrawElements(GLES20.GL_TRIANGLES, count * QuadIndexBuffer.INDICES_PER_QUAD, GLES20.GL_UNSIGNED_SHORT, 0);
+            drawCalls++;
+
+            offset += count;
+            remaining -= count;
+        }
+    }
+
+    /**
+     * Upload the matrix used by the active program and bind the texture it samples
+     * @param program program currently in use
+     * @param textureID texture we are sampling from
+     */
+    private void applyUniforms(Program program, int textureID)
+    {
+        //the program and GLState skip anything that is already set
+        program.setMatrix(matrixProjectionAndView);
+        program.setSampler(0);
+        GLState.bindTexture(0, textureID);
+    }
+
+    /**
+     * Flush whatever is left and stop collecting quads for this frame
+     */
+    public void end()
+    {
+        flush();
+        //attributes stay enabled between flushes, leave GL clean for anyone drawing after us
+        GLState.disableAllAttributes();
+        drawing = false;
+    }
+
+    /**
+     * How many draw calls the batch has issued since the frame began
+     * @return draw call count
+     */
+    public int getDrawCalls()
+    {
+        return drawCalls;
+    }
+
+    /**
+     * How many quads the batch has drawn since the frame began
+     * @return quad count
+     */
+    public int getQuadsDrawn()
+    {
+        return quadsDrawn;
+    }
+
+    /**
+     * How many frames have been drawn through the batch
+     * @return frame counter
+     */
+    public int getFrame()
+    {
+        return frame;
+    }
+
+    /**
+     * Flush the pending quads if the incoming quad uses a different program or texture
+     * @param program program the incoming quad is drawn with
+     * @param textureID texture the incoming quad is drawn from
+     */
+    private void switchState(Program program, int textureID)
+    {
+        if (program != currentProgram || textureID != currentTextureID)
+        {
+            flush();
+            currentProgram = program;
+            currentTextureID = textureID;
+        }
+    }
+
+    /**
+     * Bulk copy a range of quads from an object buffer onto the end of our stream
+     * @param source buffer we are copying from
+     * @param start first byte to copy
+     * @param length how many bytes to copy
+     */
+    private void copyQuads(ByteBuffer source, int start, int length)
+    {
+        source.limit(start + length);
+        source.position(start);
+        vertexStream.put(source);
+        source.clear();
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ca.coffeeshopstudio.icegl.gl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ca.coffeeshopstudio.icegl.controls.IControlManager;
+
+/**
+ * Rasterizes text on a pool of worker threads, one per core, so a long string never holds up
+ * a frame.  Finished bitmaps are handed back through IControlManager.runOnGLThread, so the
+ * callback runs on the GL thread at the start of the next frame, where it can upload them.
+ * Bitmaps for a screen that was disposed before they arrived are recycled instead.
+ */
+public class TextRasterizer
+{
+    /**
+     * Receives a finished bitmap on the GL thread
+     */
+    public interface Callback
+    {
+        /**
+         * @param result the text and its dimensions, or null if it couldn't be rasterized.  The
+         *               callback owns the bitmap and must upload or recycle it
+         */
+        void onRasterized(GLText.TextBitmap result);
+    }
+
+    /**
+     * A finished bitmap on its way to the GL thread
+     */
+    private static class Delivery implements Runnable
+    {
+        final IControlManager icm;
+        final GLText.TextBitmap result;
+        final Callback callback;
+
+        Delivery(IControlManager icm, GLText.TextBitmap result, Callback callback)
+        {
+            this.icm = icm;
+            this.result = result;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run()
+        {
+            synchronized (pending)
+            {
+                if (!pending.remove(this))
+                    return; //the screen was disposed and the bitmap recycled
+            }
+            if (result != null)
+                FrameStats.countRasterization();
+            callback.onRasterized(result);
+        }
+    }
+
+    private static ExecutorService workers;
+    //deliveries posted but not yet run, and the screens that will never run them
+    private static final List<Delivery> pending = new ArrayList<>();
+    private static final Map<IControlManager, Boolean> discarded = new WeakHashMap<>();
+
+    /**
+     * Queue a string to be rasterized
+     * @param icm manager whose GL thread receives the result
+     * @param text text to display
+     * @param fontFile font being used (from assets folder)
+     * @param size font size
+     * @param color color of the font
+     * @param underline whether or not to underline the text
+     * @param callback receives the bitmap
+     */
+    public static void rasterize(final IControlManager icm, final String text, final String fontFile, final int size,
+                                 final GLColor color, final boolean underline, final Callback callback)
+    {
+        getWorkers().execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                GLText.TextBitmap result;
+                try
+                {
+                    result = GLText.rasterize(icm.getContext(), text, fontFile, size, color, underline);
+                } catch (RuntimeException e)
+                {
+                    result = null;
+                }
+
+                Delivery delivery = new Delivery(icm, result, callback);
+                synchronized (pending)
+                {
+                    if (discarded.containsKey(icm))
+                    {
+                        if (result != null)
+                            result.bitmap.recycle();
+                        return;
+                    }
+                    pending.add(delivery);
+                }
+                icm.runOnGLThread(delivery);
+            }
+        });
+    }
+
+    /**
+     * Recycle every bitmap still on its way to a screen, and any finished for it later.  Called
+     * when the screen is disposed, since its GL thread won't run the deliveries anymore.  Safe
+     * to call from any thread
+     * @param icm manager being disposed
+     */
+    public static void discard(IControlManager icm)
+    {
+        synchronized (pending)
+        {
+            discarded.put(icm, Boolean.TRUE);
+            for (int i = pending.size() - 1; i >= 0; i--)
+            {
+                Delivery delivery = pending.get(i);
+                if (delivery.icm != icm)
+                    continue;
+                pending.remove(i);
+                if (delivery.result != null)
+                    delivery.result.bitmap.recycle();
+            }
+        }
+    }
+
+    /**
+     * Stop the worker threads once they finish what is queued, they start again when needed
+     */
+    public static synchronized void shutdown()
+    {
+        if (workers != null)
+        {
+            workers.shutdown();
+            workers = null;
+        }
+    }
+
+    /**
+     * The worker pool, created the first time text is queued
+     */
+    private static synchronized ExecutorService getWorkers()
+    {
+        if (workers == null)
+        {
+            final AtomicInteger count = new AtomicInteger();
+            workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable work)
+                {
+                    Thread thread = new Thread(work, "IceGL text " + count.incrementAndGet());
+                    //never keep the app alive, and stay out of the way of the GL and UI threads
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return workers;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ca.coffeeshopstudio.icegl.gl;
+
+import android.content.Context;
+import android.graphics.Rect;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Rasterized text shared between every label showing the same string in the same style, so
+ * ten OK buttons hold one texture between them.  Each user acquires an entry and releases it
+ * when it no longer shows that text.  Entries nobody holds stay around for reuse until the
+ * textures take more than the byte budget, then the least recently used go first.  Entries
+ * still held are never evicted, so the budget may be exceeded while they are.
+ *
+ * Text can also be rasterized elsewhere, such as by TextRasterizer, and handed to the cache
+ * under its key once finished.
+ *
+ * Only use this from the GL thread.
+ */
+public class TextTextureCache
+{
+    /**
+     * A texture holding one string in one style
+     */
+    public static class Entry
+    {
+        private final String key;
+        private final GLTexture texture;
+        private final Rect dimensions;
+        private final int bytes;
+        private int references = 0;
+        private boolean valid = true;
+
+        Entry(String key, GLTexture texture, Rect dimensions, int bytes)
+        {
+            this.key = key;
+            this.texture = texture;
+            this.dimensions = dimensions;
+            this.bytes = bytes;
+        }
+
+        /**
+         * The texture holding the text
+         * @return shared texture, don't rebuild it
+         */
+        public GLTexture getTexture()
+        {
+            return texture;
+        }
+
+        /**
+         * The key the entry is cached under, see TextTextureCache.key
+         * @return cache key
+         */
+        public String getKey()
+        {
+            return key;
+        }
+
+        /**
+         * Returns whether the texture still exists, it doesn't once the GL context is lost
+         * @return true if the texture can be drawn
+         */
+        public boolean isValid()
+        {
+            return valid;
+        }
+
+        /**
+         * Size of the text inside the texture
+         * @return dimensions of the text
+         */
+        public Rect getDimensions()
+        {
+            return new Rect(dimensions);
+        }
+    }
+
+    public static final int DEFAULT_BUDGET = 4 * 1024 * 1024; //bytes of texture we keep
+
+    //access ordered, so iterating starts with the least recently used
+    private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private static int budget = DEFAULT_BUDGET;
+    private static int bytesUsed = 0;
+
+    /**
+     * Get the texture of a string, rasterizing it only if no one has it.  Release it when done
+     * @param context active context
+     * @param text text to display
+     * @param fontFile font being used (from assets folder)
+     * @param size font size
+     * @param color color of the font
+     * @param underline whether or not to underline the text
+     * @return entry holding the texture
+     */
+    public static Entry acquire(Context context, String text, String fontFile, int size, GLColor color,
+                                boolean underline)
+    {
+        String key = key(text, fontFile, size, color, underline);
+        Entry entry = acquire(key);
+        if (entry == null)
+        {
+            FrameStats.countRasterization();
+            entry = acquire(key, GLText.rasterize(context, text, fontFile, size, color, underline));
+        }
+        return entry;
+    }
+
+    /**
+     * Get the texture cached under a key if there is one.  Release it when done
+     * @param key key of the text, see key
+     * @return entry holding the texture, or null if it isn't cached
+     */
+    public static Entry acquire(String key)
+    {
+        Entry entry = entries.get(key);
+        if (entry != null)
+            entry.references++;
+        return entry;
+    }
+
+    /**
+     * Upload text rasterized elsewhere and cache it.  If someone cached the same text in the
+     * meantime theirs is used and the bitmap is recycled.  Release it when done
+     * @param key key of the text, see key
+     * @param rasterized the rasterized text, the cache takes ownership of the bitmap
+     * @return entry holding the texture
+     */
+    public static Entry acquire(String key, GLText.TextBitmap rasterized)
+    {
+        Entry entry = entries.get(key);
+        if (entry != null)
+            rasterized.bitmap.recycle();
+        else
+        {
+            int bytes = rasterized.bitmap.getByteCount();
+            //the texture recycles the bitmap once uploaded
+            entry = new Entry(key, new GLTexture(rasterized.bitmap, 0, 0, 0), new Rect(rasterized.dimensions), bytes);
+            entries.put(key, entry);
+            bytesUsed += bytes;
+        }
+        entry.references++;
+        trim();
+        return entry;
+    }
+
+    /**
+     * The key text is cached under
+     * @param text text to display
+     * @param fontFile font being used (from assets folder)
+     * @param size font size
+     * @param color color of the font
+     * @param underline whether or not to underline the text
+     * @return cache key
+     */
+    public static String key(String text, String fontFile, int size, GLColor color, boolean underline)
+    {
+        return fontFile + '|' + size + '|' + color.alphaInt() + ',' + color.redInt() + ','
+                + color.greenInt() + ',' + color.blueInt() + '|' + underline + '|' + text;
+    }
+
+    /**
+     * Stop using an entry.  Once nothing holds it, it may be evicted
+     * @param entry entry from acquire, null is ignored
+     */
+    public static void release(Entry entry)
+    {
+        //entries from before the GL context was lost are no longer ours
+        if (entry == null || entries.get(entry.key) != entry || entry.references == 0)
+            return;
+        entry.references--;
+        trim();
+    }
+
+    /**
+     * Change how many bytes of texture we keep once nothing holds them
+     * @param bytes new budget
+     * @throws IllegalArgumentException
+     */
+    public static void setBudget(int bytes)
+    {
+        if (bytes < 0)
+            throw new IllegalArgumentException("budget must not be negative");
+        budget = bytes;
+        trim();
+    }
+
+    /**
+     * The byte budget
+     * @return budget in bytes
+     */
+    public static int getBudget()
+    {
+        return budget;
+    }
+
+    /**
+     * How many bytes of texture we hold, including entries still in use
+     * @return bytes used
+     */
+    public static int getBytesUsed()
+    {
+        return bytesUsed;
+    }
+
+    /**
+     * How many strings we hold textures for
+     * @return entry count
+     */
+    public static int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Forget every entry, their textures belonged to a GL context that is gone
+     */
+    public static void invalidateAll()
+    {
+        for (Entry entry : entries.values())
+            entry.valid = false;
+        entries.clear();
+        bytesUsed = 0;
+    }
+
+    /**
+     * Delete unused textures, least recently used first, until we are within the budget
+     */
+    private static void trim()
+    {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (bytesUsed > budget && iterator.hasNext())
+        {
+            Entry entry = iterator.next();
+            if (entry.references > 0)
+                continue;
+            iterator.remove();
+            bytesUsed -= entry.bytes;
+            entry.texture.delete();
+        }
+    }
+}
@@ -0,0 +1,525 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ca.coffeeshopstudio.icegl.gl;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.opengl.GLES20;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Packs many small bitmaps into a few shared textures, so images, sprites and text drawn from
+ * the same atlas batch together instead of switching texture for each one.  Each bitmap added
+ * gets a region handle carrying its texture and precomputed texture coordinates, ready for
+ * Control.setTextureRegion (or setTextureID, setTexturePosition and setTextureOffset).
+ *
+ * Pages are packed with a skyline: the top edge of what has been placed so far, each new
+ * bitmap going where it leaves that edge lowest.  Freed regions leave holes a skyline can't
+ * reuse, repack closes them by packing every live region again from scratch.  The atlas keeps
+ * each bitmap so it can repack and restore its pages after the GL context is lost, so hand it
+ * bitmaps you no longer need yourself.
+ *
+ * Only use this from the GL thread.
+ */
+public class TextureAtlas
+{
+    /**
+     * Where one bitmap ended up.  The texture coordinates change when the atlas is repacked or
+     * restored, which bumps the version so users know to pick them up again
+     */
+    public static class Region
+    {
+        private Page page;
+        private Bitmap bitmap;
+        private final int width;
+        private final int height;
+        private int x;
+        private int y;
+        private int version = 0;
+
+        Region(Bitmap bitmap)
+        {
+            this.bitmap = bitmap;
+            this.width = bitmap.getWidth();
+            this.height = bitmap.getHeight();
+        }
+
+        /**
+         * The texture of the page holding the region
+         * @return texture ID, or -1 once freed
+         */
+        public int getTextureID()
+        {
+            return page == null ? -1 : page.getTextureID();
+        }
+
+        /**
+         * Left edge inside the texture
+         * @return u between 0 and 1
+         */
+        public float getU0()
+        {
+            return page == null ? 0 : (float) x / page.size;
+        }
+
+        /**
+         * Top edge inside the texture
+         * @return v between 0 and 1
+         */
+        public float getV0()
+        {
+            return page == null ? 0 : (float) y / page.size;
+        }
+
+        /**
+         * Right edge inside the texture
+         * @return u between 0 and 1
+         */
+        public float getU1()
+        {
+            return page == null ? 0 : (float) (x + width) / page.size;
+        }
+
+        /**
+         * Bottom edge inside the texture
+         * @return v between 0 and 1
+         */
+        public float getV1()
+        {
+            return page == null ? 0 : (float) (y + height) / page.size;
+        }
+
+        /**
+         * Horizontal position for setTexturePosition, which counts in multiples of the offset
+         * @return texture position
+         */
+        public float getTextureX()
+        {
+            return width == 0 ? 0 : getU0() / getTextureWidth();
+        }
+
+        /**
+         * Vertical position for setTexturePosition, which counts in multiples of the offset
+         * @return texture position
+         */
+        public float getTextureY()
+        {
+            return height == 0 ? 0 : getV0() / getTextureHeight();
+        }
+
+        /**
+         * Horizontal offset for setTextureOffset
+         * @return width of the region inside the texture
+         */
+        public float getTextureWidth()
+        {
+            return getU1() - getU0();
+        }
+
+        /**
+         * Vertical offset for setTextureOffset
+         * @return height of the region inside the texture
+         */
+        public float getTextureHeight()
+        {
+            return getV1() - getV0();
+        }
+
+        /**
+         * Width of the bitmap
+         * @return width in pixels
+         */
+        public int getWidth()
+        {
+            return width;
+        }
+
+        /**
+         * Height of the bitmap
+         * @return height in pixels
+         */
+        public int getHeight()
+        {
+            return height;
+        }
+
+        /**
+         * Changes every time the texture or texture coordinates of the region change
+         * @return version number
+         */
+        public int getVersion()
+        {
+            return version;
+        }
+
+        /**
+         * Returns whether the region was freed
+         * @return true once freed
+         */
+        public boolean isFreed()
+        {
+            return page == null;
+        }
+    }
+
+    /**
+     * One texture and the skyline of what is packed into it
+     */
+    private static class Page
+    {
+        final int size;
+        final List<Region> regions = new ArrayList<>();
+        //the skyline, left to right, as segments starting at x with their height and width
+        final List<int[]> skyline = new ArrayList<>();
+        GLTexture texture;
+
+        Page(int size)
+        {
+            this.size = size;
+            clear();
+        }
+
+        /**
+         * Forget everything packed into the page
+         */
+        void clear()
+        {
+            regions.clear();
+            skyline.clear();
+            skyline.add(new int[] {0, 0, size});
+        }
+
+        /**
+         * The texture, restoring it first if the GL context lost it
+         */
+        int getTextureID()
+        {
+            if (texture == null)
+                upload();
+            return texture.getTextureID();
+        }
+
+        /**
+         * Draw every region into a fresh bitmap and upload it as the whole texture
+         */
+        void upload()
+        {
+            Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+            bitmap.eraseColor(0);
+            Canvas canvas = new Canvas(bitmap);
+            for (Region region : regions)
+                canvas.drawBitmap(region.bitmap, region.x, region.y, null);
+            //the texture recycles the bitmap once uploaded
+            if (texture == null)
+                texture = new GLTexture(bitmap, 0, 0, 0);
+            else
+                texture.rebuildTexture(bitmap);
+        }
+    }
+
+    public static final int DEFAULT_PAGE_SIZE = 1024;
+    private static final int PADDING = 1; //empty texels between regions so they don't bleed
+
+    //every atlas in use, so they can be restored after the GL context is lost
+    private static final List<TextureAtlas> atlases = new ArrayList<>();
+
+    private final int pageSize;
+    private final List<Page> pages = new ArrayList<>();
+
+    /**
+     * Create an atlas with the default page size
+     */
+    public TextureAtlas()
+    {
+        this(DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Create an atlas
+     * @param pageSize width and height of each page in pixels
+     * @throws IllegalArgumentException
+     */
+    public TextureAtlas(int pageSize)
+    {
+        if (pageSize <= 0)
+            throw new IllegalArgumentException("page size must be positive");
+        this.pageSize = pageSize;
+        atlases.add(this);
+    }
+
+    /**
+     * Mark the pages of every atlas as lost along with the GL context, each page uploads again
+     * the next time a region asks for its texture
+     */
+    public static void invalidateAll()
+    {
+        for (TextureAtlas atlas : atlases)
+            for (Page page : atlas.pages)
+            {
+                page.texture = null;
+                for (Region region : page.regions)
+                    region.version++;
+            }
+    }
+
+    /**
+     * Pack a bitmap into the atlas
+     * @param bitmap bitmap to add, the atlas owns it from now on
+     * @return handle of where it went
+     * @throws IllegalArgumentException
+     */
+    public Region add(Bitmap bitmap)
+    {
+        if (bitmap == null)
+            throw new IllegalArgumentException("bitmap is null");
+        if (bitmap.getWidth() + PADDING > pageSize || bitmap.getHeight() + PADDING > pageSize)
+            throw new IllegalArgumentException("bitmap is larger than a page");
+
+        Region region = new Region(bitmap);
+        for (Page page : pages)
+            if (place(page, region))
+            {
+                //only the new region needs uploading into the existing texture
+                if (page.texture != null)
+                {
+                    GLState.bindTexture(0, page.texture.getTextureID());
+                    ScreenConfiguration.gl.texSubImage2D(GLES20.GL_TEXTURE_2D, 0, region.x, region.y, bitmap);
+                    FrameStats.countTextureUpload();
+                }
+                return region;
+            }
+
+        Page page = new Page(pageSize);
+        pages.add(page);
+        place(page, region);
+        page.upload();
+        return region;
+    }
+
+    /**
+     * Stop using a region, its space is reclaimed once the page empties or is repacked
+     * @param region region from add, freeing it twice is ignored
+     */
+    public void free(Region region)
+    {
+        if (region == null || region.page == null || !pages.contains(region.page))
+            return;
+
+        Page page = region.page;
+        page.regions.remove(region);
+        region.page = null;
+        region.version++;
+        region.bitmap.recycle();
+        region.bitmap = null;
+
+        if (page.regions.isEmpty())
+        {
+            //an empty page is dropped rather than kept around
+            if (page.texture != null)
+                page.texture.delete();
+            pages.remove(page);
+        }
+    }
+
+    /**
+     * Pack every live region again, biggest first, closing the holes left by freed regions.
+     * Regions usually move, their versions change so users pick up the new coordinates
+     */
+    public void repack()
+    {
+        List<Region> regions = new ArrayList<>();
+        for (Page page : pages)
+            regions.addAll(page.regions);
+        //tall regions first pack tightest on a skyline
+        Collections.sort(regions, new Comparator<Region>()
+        {
+            @Override
+            public int compare(Region a, Region b)
+            {
+                if (a.height != b.height)
+                    return b.height - a.height;
+                return b.width - a.width;
+            }
+        });
+
+        for (Page page : pages)
+            page.clear();
+        int used = 0;
+        for (Region region : regions)
+        {
+            while (!place(pages.get(used), region))
+            {
+                used++;
+                if (used == pages.size())
+                    pages.add(new Page(pageSize));
+            }
+            region.version++;
+        }
+
+        //pages left empty go, the rest are drawn again
+        for (int i = pages.size() - 1; i >= 0; i--)
+        {
+            Page page = pages.get(i);
+            if (page.regions.isEmpty())
+            {
+                if (page.texture != null)
+                    page.texture.delete();
+                pages.remove(i);
+            } else
+                page.upload();
+        }
+    }
+
+    /**
+     * Free every region and delete every page.  The atlas can't be used afterwards
+     */
+    public void dispose()
+    {
+        for (Page page : pages)
+        {
+            for (Region region : page.regions)
+            {
+                region.page = null;
+                region.version++;
+                region.bitmap.recycle();
+                region.bitmap = null;
+            }
+            if (page.texture != null)
+                page.texture.delete();
+        }
+        pages.clear();
+        atlases.remove(this);
+    }
+
+    /**
+     * How many pages, and so textures, the atlas uses
+     * @return page count
+     */
+    public int getPageCount()
+    {
+        return pages.size();
+    }
+
+    /**
+     * Find a spot for a region on a page's skyline and claim it
+     * @param page page to pack into
+     * @param region region to place
+     * @return false if the page has no room
+     */
+    private static boolean place(Page page, Region region)
+    {
+        int width = region.width + PADDING;
+        int height = region.height + PADDING;
+
+        //lowest resulting top edge wins, ties going to the narrowest segment
+        int bestIndex = -1;
+        int bestTop = Integer.MAX_VALUE;
+        int bestWidth = Integer.MAX_VALUE;
+        int bestY = 0;
+        for (int i = 0; i < page.skyline.size(); i++)
+        {
+            int y = fit(page, i, width, height);
+            if (y < 0)
+                continue;
+            int segmentWidth = page.skyline.get(i)[2];
+            if (y + height < bestTop || (y + height == bestTop && segmentWidth < bestWidth))
+            {
+                bestIndex = i;
+                bestTop = y + height;
+                bestWidth = segmentWidth;
+                bestY = y;
+            }
+        }
+        if (bestIndex < 0)
+            return false;
+
+        int x = page.skyline.get(bestIndex)[0];
+        raise(page, bestIndex, x, bestY + height, width);
+        region.page = page;
+        region.x = x;
+        region.y = bestY;
+        page.regions.add(region);
+        return true;
+    }
+
+    /**
+     * How high a rectangle starting at a skyline segment has to sit to clear every segment
+     * under it
+     * @return y position, or -1 if it doesn't fit
+     */
+    private static int fit(Page page, int index, int width, int height)
+    {
+        int x = page.skyline.get(index)[0];
+        if (x + width > page.size)
+            return -1;
+
+        int y = 0;
+        int remaining = width;
+        for (int i = index; remaining > 0; i++)
+        {
+            int[] segment = page.skyline.get(i);
+            y = Math.max(y, segment[1]);
+            if (y + height > page.size)
+                return -1;
+            remaining -= segment[2];
+        }
+        return y;
+    }
+
+    /**
+     * Add a segment for a newly placed rectangle and cut away what it covers
+     */
+    private static void raise(Page page, int index, int x, int top, int width)
+    {
+        page.skyline.add(index, new int[] {x, top, width});
+
+        //segments under the new one shrink or disappear
+        int right = x + width;
+        int i = index + 1;
+        while (i < page.skyline.size())
+        {
+            int[] segment = page.skyline.get(i);
+            if (segment[0] >= right)
+                break;
+            int overlap = right - segment[0];
+            if (overlap >= segment[2])
+                page.skyline.remove(i);
+            else
+            {
+                segment[0] += overlap;
+                segment[2] -= overlap;
+                break;
+            }
+        }
+
+        //neighbours at the same height become one segment
+        for (i = 0; i < page.skyline.size() - 1; i++)
+        {
+            int[] segment = page.skyline.get(i);
+            int[] next = page.skyline.get(i + 1);
+            if (segment[1] == next[1])
+            {
+                segment[2] += next[2];
+                page.skyline.remove(i + 1);
+                i--;
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.coffeeshopstudio.icegl.gl;
+
+import android.view.MotionEvent;
+
+/**
+ * Carries touches from the UI thread to the GL thread.  Every MotionEvent is copied into
+ * records that are allocated once and reused, sitting in a ring buffer with one writer (the UI
+ * thread) and one reader (the GL thread), so neither side locks or allocates.  When the GL
+ * thread drains the ring, a run of MOVE samples for the same pointer collapses into the last
+ * one, so a fast drag costs one dispatch per pointer per frame no matter how many samples
+ * the touch screen delivers.
+ *
+ * If the GL thread falls behind, MOVE samples stop being queued once the ring is three
+ * quarters full.  The rest is kept for DOWN, UP and CANCEL, which controls rely on to end a
+ * press or drag, so those are only lost if a quarter of the ring fills with them alone.
+ */
+public class TouchQueue
+{
+    /**
+     * Receives the touches once they reach the GL thread
+     */
+    public interface TouchHandler
+    {
+        /**
+         * Handle a single touch
+         * @param action MotionEvent.ACTION_DOWN, ACTION_MOVE, ACTION_UP or ACTION_CANCEL
+         * @param pointerId which finger this is
+         * @param x horizontal position in screen pixels
+         * @param y vertical position in screen pixels, measured from the top
+         * @param eventTime when the touch happened, in the SystemClock.uptimeMillis base
+         */
+        void onTouch(int action, int pointerId, float x, float y, long eventTime);
+    }
+
+    /**
+     * One touch of one pointer
+     */
+    private static class TouchRecord
+    {
+        int action;
+        int pointerId;
+        float x;
+        float y;
+        long eventTime;
+    }
+
+    private static final int DEFAULT_CAPACITY = 256; //must be a power of two
+    private static final int MAX_POINTERS = 32; //pointer IDs we coalesce, others are passed through
+
+    private final TouchRecord[] ring;
+    private final int mask;
+    private final int moveLimit; //MOVE samples stop here, leaving the rest for terminal events
+    //written by the producer, read by the consumer and the other way around
+    private volatile long writeIndex = 0;
+    private volatile long readIndex = 0;
+    private volatile int droppedRecords = 0;
+
+    //consumer side work space, reused each drain
+    private final TouchRecord[] pending;
+    private final boolean[] skip;
+    private final boolean[] laterMove = new boolean[MAX_POINTERS];
+
+    /**
+     * Create a queue with the default capacity
+     */
+    public TouchQueue()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a queue holding the specified number of records
+     * @param capacity how many touches can wait for the GL thread, a power of two
+     * @throws IllegalArgumentException
+     */
+    public TouchQueue(int capacity)
+    {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0)
+            throw new IllegalArgumentException("capacity must be a power of two");
+        ring = new TouchRecord[capacity];
+        pending = new TouchRecord[capacity];
+        skip = new boolean[capacity];
+        for (int i = 0; i < capacity; i++)
+        {
+            ring[i] = new TouchRecord();
+            pending[i] = new TouchRecord();
+        }
+        mask = capacity - 1;
+        moveLimit = capacity - Math.max(1, capacity / 4);
+    }
+
+    /**
+     * Copy a MotionEvent into the queue.  Only call from the thread delivering touches
+     * @param event event to copy
+     */
+    public void post(MotionEvent event)
+    {
+        int action = event.getActionMasked();
+        switch (action)
+        {
+            case MotionEvent.ACTION_MOVE:
+            case MotionEvent.ACTION_CANCEL:
+                //every pointer on the screen moved, or every pointer is cancelled
+                for (int i = 0; i < event.getPointerCount(); i++)
+                    post(action, event.getPointerId(i), event.getX(i), event.getY(i), event.getEventTime());
+                break;
+            case MotionEvent.ACTION_POINTER_DOWN:
+            case MotionEvent.ACTION_POINTER_UP:
+                //extra fingers are reported as presses of their own
+                int index = event.getActionIndex();
+                post(action == MotionEvent.ACTION_POINTER_DOWN ? MotionEvent.ACTION_DOWN : MotionEvent.ACTION_UP,
+                        event.getPointerId(index), event.getX(index), event.getY(index), event.getEventTime());
+                break;
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_UP:
+                int actionIndex = event.getActionIndex();
+                post(action, event.getPointerId(actionIndex), event.getX(actionIndex), event.getY(actionIndex),
+                        event.getEventTime());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Queue a single touch.  Only call from the thread delivering touches
+     * @param action MotionEvent.ACTION_DOWN, ACTION_MOVE, ACTION_UP or ACTION_CANCEL
+     * @param pointerId which finger this is
+     * @param x horizontal position in screen pixels
+     * @param y vertical position in screen pixels, measured from the top
+     * @param eventTime when the touch happened
+     */
+    public void post(int action, int pointerId, float x, float y, long eventTime)
+    {
+        long write = writeIndex;
+        int limit = action == MotionEvent.ACTION_MOVE ? moveLimit : ring.length;
+        if (write - readIndex >= limit)
+        {
+            //the GL thread has fallen far behind, drop rather than block the UI thread.  A
+            //dropped MOVE is harmless since the next sample or the UP carries a newer position
+            droppedRecords++;
+            return;
+        }
+
+        TouchRecord record = ring[(int) (write & mask)];
+        record.action = action;
+        record.pointerId = pointerId;
+        record.x = x;
+        record.y = y;
+        record.eventTime = eventTime;
+        //publishing the index is what makes the record visible to the reader
+        writeIndex = write + 1;
+    }
+
+    /**
+     * Hand every queued touch to the handler, collapsing runs of MOVE samples per pointer.
+     * Only call from the GL thread
+     * @param handler receives the touches in the order they happened
+     * @return how many touches were dispatched
+     */
+    public int drain(TouchHandler handler)
+    {
+        //copy everything out so the writer can reuse the slots straight away
+        long read = readIndex;
+        long write = writeIndex;
+        int count = (int) (write - read);
+        for (int i = 0; i < count; i++)
+        {
+            TouchRecord from = ring[(int) ((read + i) & mask)];
+            TouchRecord to = pending[i];
+            to.action = from.action;
+            to.pointerId = from.pointerId;
+            to.x = from.x;
+            to.y = from.y;
+            to.eventTime = from.eventTime;
+        }
+        readIndex = write;
+
+        //walk backwards so we know whether a newer MOVE for the same pointer follows
+        for (int i = 0; i < MAX_POINTERS; i++)
+            laterMove[i] = false;
+        for (int i = count - 1; i >= 0; i--)
+        {
+            TouchRecord record = pending[i];
+            int pointer = record.pointerId;
+            skip[i] = false;
+            if (pointer < 0 || pointer >= MAX_POINTERS)
+                continue;
+            if (record.action == MotionEvent.ACTION_MOVE)
+            {
+                skip[i] = laterMove[pointer];
+                laterMove[pointer] = true;
+            }
+            else
+                laterMove[pointer] = false;
+        }
+
+        int dispatched = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (skip[i])
+                continue;
+            TouchRecord record = pending[i];
+            handler.onTouch(record.action, record.pointerId, record.x, record.y, record.eventTime);
+            dispatched++;
+        }
+        return dispatched;
+    }
+
+    /**
+     * How many touches were dropped because the queue was full
+     * @return dropped touch count
+     */
+    public int getDroppedRecords()
+    {
+        return droppedRecords;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.coffeeshopstudio.icegl.gl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of the interleaved vertices used for all UI geometry.  Each vertex is a 2D position
+ * stored as two floats followed by the texture coordinates stored as two normalized unsigned
+ * shorts, 12 bytes in a single stream.  Quads are written top left, bottom left, bottom right,
+ * top right to match the shared quad index buffer.
+ */
+public class VertexFormat
+{
+    public static final int POSITION_COMPONENTS = 2; //x, y
+    public static final int TEXTURE_COMPONENTS = 2; //u, v
+
+    //byte offsets inside a vertex
+    public static final int POSITION_OFFSET = 0;
+    public static final int TEXTURE_OFFSET = 8;
+
+    public static final int STRIDE = 12; //bytes per vertex
+    public static final int VERTICES_PER_QUAD = 4;
+    public static final int BYTES_PER_QUAD = STRIDE * VERTICES_PER_QUAD;
+
+    //largest value of a normalized unsigned short
+    private static final float TEXTURE_SCALE = 65535f;
+
+    /**
+     * Convert a texture coordinate between 0 and 1 into a normalized unsigned short
+     * @param coordinate texture coordinate, clamped to 0..1
+     * @return the packed coordinate
+     */
+    public static short packTexture(float coordinate)
+    {
+        if (coordinate < 0)
+            coordinate = 0;
+        else if (coordinate > 1)
+            coordinate = 1;
+        return (short) Math.round(coordinate * TEXTURE_SCALE);
+    }
+
+    /**
+     * Convert a packed texture coordinate back into a value between 0 and 1
+     * @param packed normalized unsigned short
+     * @return texture coordinate
+     */
+    public static float unpackTexture(short packed)
+    {
+        return (packed & 0xFFFF) / TEXTURE_SCALE;
+    }
+
+    /**
+     * Write a whole quad at the specified position of a buffer
+     * @param buffer buffer we are writing to
+     * @param byteOffset where the quad starts
+     * @param left left edge of the quad
+     * @param bottom bottom edge of the quad
+     * @param right right edge of the quad
+     * @param top top edge of the quad
+     * @param u0 left edge inside the texture
+     * @param v0 top edge inside the texture
+     * @param u1 right edge inside the texture
+     * @param v1 bottom edge inside the texture
+     */
+    public static void putQuad(ByteBuffer buffer, int byteOffset, float left, float bottom, float right, float top,
+                               float u0, float v0, float u1, float v1)
+    {
+        short su0 = packTexture(u0);
+        short sv0 = packTexture(v0);
+        short su1 = packTexture(u1);
+        short sv1 = packTexture(v1);
+
+        putVertex(buffer, byteOffset, left, top, su0, sv0);
+        putVertex(buffer, byteOffset + STRIDE, left, bottom, su0, sv1);
+        putVertex(buffer, byteOffset + STRIDE * 2, right, bottom, su1, sv1);
+        putVertex(buffer, byteOffset + STRIDE * 3, right, top, su1, sv0);
+    }
+
+    /**
+     * Write a single vertex at the specified position of a buffer
+     * @param buffer buffer we are writing to
+     * @param byteOffset where the vertex starts
+     * @param x horizontal position
+     * @param y vertical position
+     * @param u packed horizontal texture coordinate
+     * @param v packed vertical texture coordinate
+     */
+    private static void putVertex(ByteBuffer buffer, int byteOffset, float x, float y, short u, short v)
+    {
+        buffer.putFloat(byteOffset + POSITION_OFFSET, x);
+        buffer.putFloat(byteOffset + POSITION_OFFSET + 4, y);
+        buffer.putShort(byteOffset + TEXTURE_OFFSET, u);
+        buffer.putShort(byteOffset + TEXTURE_OFFSET + 2, v);
+    }
+}
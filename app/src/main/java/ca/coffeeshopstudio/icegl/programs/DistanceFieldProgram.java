@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ca.coffeeshopstudio.icegl.programs;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import ca.coffeeshopstudio.icegl.gl.GLColor;
+import ca.coffeeshopstudio.icegl.gl.GLState;
+import ca.coffeeshopstudio.icegl.gl.GlyphAtlas;
+import ca.coffeeshopstudio.icegl.gl.ScreenConfiguration;
+
+public class DistanceFieldProgram extends Program
+{
+    /**
+     * Distance Field Shader
+     * Draws text from a distance field glyph atlas (see GlyphAtlas.getDistanceField).  Alpha
+     * 0.5 is the edge of the glyph, the edge is softened over about one screen pixel so the
+     * text stays sharp at any size.  The colour is a uniform, premultiplied to match our
+     * blending, so each colour gets its own program and batches like any other
+     */
+    private static final String VERTEX_SHADER =
+            "uniform mat4 uMVPMatrix;" +
+                    "attribute vec2 vPosition;" +
+                    "attribute vec2 a_texCoord;" +
+                    "varying vec2 v_texCoord;" +
+                    "void main() {" +
+                    "  gl_Position = uMVPMatrix * vec4(vPosition, 0.0, 1.0);" +
+                    "  v_texCoord = a_texCoord;" +
+                    "}";
+    //fwidth needs the derivatives extension, nearly every device has it
+    private static final String FRAGMENT_SHADER =
+            "#extension GL_OES_standard_derivatives : enable\n" +
+                    "precision mediump float;" +
+                    "varying vec2 v_texCoord;" +
+                    "uniform sampler2D s_texture;" +
+                    "uniform vec4 u_color;" +
+                    "void main() {" +
+                    "  float distance = texture2D( s_texture, v_texCoord ).a;" +
+                    "  float smoothing = 0.7 * fwidth(distance);" +
+                    "  gl_FragColor = u_color * smoothstep(0.5 - smoothing, 0.5 + smoothing, distance);" +
+                    "}";
+    //without it the edge is softened by a fixed amount suited to the atlas size
+    private static final String FRAGMENT_SHADER_FIXED =
+            "precision mediump float;" +
+                    "varying vec2 v_texCoord;" +
+                    "uniform sampler2D s_texture;" +
+                    "uniform vec4 u_color;" +
+                    "uniform float u_smoothing;" +
+                    "void main() {" +
+                    "  float distance = texture2D( s_texture, v_texCoord ).a;" +
+                    "  gl_FragColor = u_color * smoothstep(0.5 - u_smoothing, 0.5 + u_smoothing, distance);" +
+                    "}";
+
+    //one program per colour, kept across GL contexts so their sort indexes stay put
+    private static final Map<Integer, DistanceFieldProgram> programs = new HashMap<>();
+
+    private final GLColor color;
+    private boolean derivatives = true;
+    private boolean built = false;
+
+    /**
+     * Get the program drawing distance field text in a colour, building it if needed.  Only
+     * call from the GL thread
+     * @param color colour of the text
+     * @return program ready to draw with
+     */
+    public static DistanceFieldProgram get(GLColor color)
+    {
+        if (color == null)
+            color = GLColor.White;
+        int key = (color.alphaInt() << 24) | (color.redInt() << 16) | (color.greenInt() << 8) | color.blueInt();
+        DistanceFieldProgram program = programs.get(key);
+        if (program == null)
+        {
+            program = new DistanceFieldProgram(color);
+            programs.put(key, program);
+        }
+        if (!program.built)
+            program.buildShaders();
+        return program;
+    }
+
+    /**
+     * Mark every program as needing to be built again, their GL context is gone
+     */
+    public static void invalidateAll()
+    {
+        for (DistanceFieldProgram program : programs.values())
+            program.built = false;
+    }
+
+    /**
+     * Create a program drawing in a colour
+     * @param color colour of the text
+     */
+    private DistanceFieldProgram(GLColor color)
+    {
+        this.color = color;
+    }
+
+    @Override
+    public void buildShaders()
+    {
+        try
+        {
+            derivatives = true;
+            super.buildShaders();
+        } catch (RuntimeException e)
+        {
+            //no derivatives extension, settle for the fixed softening
+            derivatives = false;
+            super.buildShaders();
+        }
+
+        //uniforms keep their value, so the colour only has to be set once per link
+        GLState.useProgram(getProgramID());
+        ScreenConfiguration.gl.glUniform4f(getUniformLocation("u_color"), color.red() * color.alpha(),
+                color.green() * color.alpha(), color.blue() * color.alpha(), color.alpha());
+        if (!derivatives)
+            ScreenConfiguration.gl.glUniform1f(getUniformLocation("u_smoothing"),
+                    0.25f / GlyphAtlas.DISTANCE_FIELD_SPREAD);
+        built = true;
+    }
+
+    @Override
+    public String getVertexShaderProgram()
+    {
+        return VERTEX_SHADER;
+    }
+
+    @Override
+    public String getFragmentShaderProgram()
+    {
+        return derivatives ? FRAGMENT_SHADER : FRAGMENT_SHADER_FIXED;
+    }
+}
@@ -21,15 +21,15 @@ public class ImageProgram extends Program
     /**
      * Image Shader
      * This shader is for rendering 2D images straight from a texture
-     * No additional effects.
+     * No additional effects.  Positions arrive as 2D x,y pairs, see VertexFormat
      */
     private final String VERTEX_SHADER =
             "uniform mat4 uMVPMatrix;" +
-                    "attribute vec4 vPosition;" +
+                    "attribute vec2 vPosition;" +
                     "attribute vec2 a_texCoord;" +
                     "varying vec2 v_texCoord;" +
                     "void main() {" +
-                    "  gl_Position = uMVPMatrix * vPosition;" +
+                    "  gl_Position = uMVPMatrix * vec4(vPosition, 0.0, 1.0);" +
                     "  v_texCoord = a_texCoord;" +
                     "}";
     private final String FRAGMENT_SHADER =
@@ -18,6 +18,14 @@ package ca.coffeeshopstudio.icegl.programs;
 
 import android.opengl.GLES20;
 
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import ca.coffeeshopstudio.icegl.gl.GLState;
+import ca.coffeeshopstudio.icegl.gl.ScreenConfiguration;
+import ca.coffeeshopstudio.icegl.gl.VertexFormat;
+
 /**
  * GL Shader Program abstract used by the GL Library
  */
@@ -26,9 +34,35 @@ public abstract class Program
     //Program variables
     protected int shaderProgramHandle;
 
+    //small number identifying the program inside render queue sort keys
+    private static int programCount = 0;
+    private final int sortIndex;
+
     private int positionHandle;
     private int textureCoordinateHandle;
     private int matrixHandle;
+    private int samplerHandle;
+
+    //every active uniform and attribute, resolved once when the program is linked
+    private final Map<String, Integer> uniformLocations = new HashMap<>();
+    private final Map<String, Integer> attributeLocations = new HashMap<>();
+
+    //last values we uploaded, uniforms keep their value while the program is not in use
+    private int[] uniformSlots = new int[0];
+    private float[][] lastMatrices = new float[0][];
+    private int[] lastInts = new int[0];
+    private boolean[] uploaded = new boolean[0];
+
+    /**
+     * Default constructor, gives the program its sort index
+     */
+    protected Program()
+    {
+        synchronized (Program.class)
+        {
+            sortIndex = programCount++;
+        }
+    }
 
     /**
      * retrieve the code we will be using to compile the vertex shader program
@@ -65,21 +99,21 @@ public abstract class Program
 
         //create a vertex shader type (GLES20.GL_VERTEX_SHADER)
         //or a fragment shader type (GLES20.GL_FRAGMENT_SHADER)
-        int shaderHandle = GLES20.glCreateShader(type);
+        int shaderHandle = ScreenConfiguration.gl.glCreateShader(type);
 
         //add the source code to the shader and compile it
-        GLES20.glShaderSource(shaderHandle, shaderCode);
-        GLES20.glCompileShader(shaderHandle);
+        ScreenConfiguration.gl.glShaderSource(shaderHandle, shaderCode);
+        ScreenConfiguration.gl.glCompileShader(shaderHandle);
 
         //Get the compilation status.
         final int[] compileStatus = new int[1];
-        GLES20.glGetShaderiv(shaderHandle, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
+        ScreenConfiguration.gl.glGetShaderiv(shaderHandle, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
 
         //If the compilation failed, delete the shader.
         if (compileStatus[0] == 0)
         {
-            String result = GLES20.glGetShaderInfoLog(shaderHandle);
-            GLES20.glDeleteShader(shaderHandle);
+            String result = ScreenConfiguration.gl.glGetShaderInfoLog(shaderHandle);
+            ScreenConfiguration.gl.glDeleteShader(shaderHandle);
             throw new RuntimeException("Error creating shader. " + result);
         }
 
@@ -95,35 +129,268 @@ public abstract class Program
         int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER);
         int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER);
 
-        shaderProgramHandle = GLES20.glCreateProgram();             //create empty OpenGL ES Program
+        shaderProgramHandle = ScreenConfiguration.gl.glCreateProgram();             //create empty OpenGL ES Program
 
-        GLES20.glAttachShader(shaderProgramHandle, vertexShader);   //add vertex shader to program
-        GLES20.glAttachShader(shaderProgramHandle, fragmentShader); //add fragment shader to program
+        ScreenConfiguration.gl.glAttachShader(shaderProgramHandle, vertexShader);   //add vertex shader to program
+        ScreenConfiguration.gl.glAttachShader(shaderProgramHandle, fragmentShader); //add fragment shader to program
 
         //creates OpenGL ES program executables
-        GLES20.glLinkProgram(shaderProgramHandle);
+        ScreenConfiguration.gl.glLinkProgram(shaderProgramHandle);
 
         //Bind required attributes
         //GLES20.glBindAttribLocation(shaderProgramHandle, 1, "vColor");
 
-        //get handle to vertex shaders vPosition member
-        positionHandle = GLES20.glGetAttribLocation(shaderProgramHandle, "vPosition");
-        //Get handle to texture coordinates location
-        textureCoordinateHandle = GLES20.glGetAttribLocation(shaderProgramHandle, "a_texCoord" );
-        //Get handle to shape's transformation matrix
-        matrixHandle = GLES20.glGetUniformLocation(shaderProgramHandle, "uMVPMatrix");
-
         //Get the link status.
         final int[] linkStatus = new int[1];
-        GLES20.glGetProgramiv(shaderProgramHandle, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        ScreenConfiguration.gl.glGetProgramiv(shaderProgramHandle, GLES20.GL_LINK_STATUS, linkStatus, 0);
 
         //If the link failed, delete the program.
         if (linkStatus[0] == 0)
         {
-            GLES20.glDeleteProgram(shaderProgramHandle);
+            ScreenConfiguration.gl.glDeleteProgram(shaderProgramHandle);
             shaderProgramHandle = 0;
             throw new RuntimeException("Error building program. ");
         }
+
+        resolveLocations();
+
+        //get handle to vertex shaders vPosition member
+        positionHandle = getAttributeLocation("vPosition");
+        //Get handle to texture coordinates location
+        textureCoordinateHandle = getAttributeLocation("a_texCoord");
+        //Get handle to shape's transformation matrix
+        matrixHandle = getUniformLocation("uMVPMatrix");
+        //Get handle to the texture we sample from
+        samplerHandle = getUniformLocation("s_texture");
+    }
+
+    /**
+     * Ask the linked program for every active uniform and attribute so we never have to look
+     * them up while drawing.  Also forgets any values uploaded to a previous link
+     */
+    private void resolveLocations()
+    {
+        uniformLocations.clear();
+        attributeLocations.clear();
+
+        final int[] count = new int[1];
+        final int[] size = new int[1];
+        final int[] type = new int[1];
+        final int[] length = new int[1];
+
+        //names come back through a byte buffer as long as the longest name, plus its terminator
+        final int[] longest = new int[2];
+        ScreenConfiguration.gl.glGetProgramiv(shaderProgramHandle, GLES20.GL_ACTIVE_UNIFORM_MAX_LENGTH, longest, 0);
+        ScreenConfiguration.gl.glGetProgramiv(shaderProgramHandle, GLES20.GL_ACTIVE_ATTRIBUTE_MAX_LENGTH, longest, 1);
+        final byte[] name = new byte[Math.max(1, Math.max(longest[0], longest[1]))];
+
+        ScreenConfiguration.gl.glGetProgramiv(shaderProgramHandle, GLES20.GL_ACTIVE_UNIFORMS, count, 0);
+        uniformSlots = new int[count[0]];
+        lastMatrices = new float[count[0]][];
+        lastInts = new int[count[0]];
+        uploaded = new boolean[count[0]];
+        for (int i = 0; i < count[0]; i++)
+        {
+            ScreenConfiguration.gl.glGetActiveUniform(shaderProgramHandle, i, name.length, length, 0, size, 0, type, 0,
+                    name, 0);
+            String uniform = trimArrayName(decodeName(name, length[0]));
+            int location = ScreenConfiguration.gl.glGetUniformLocation(shaderProgramHandle, uniform);
+            uniformLocations.put(uniform, location);
+            uniformSlots[i] = location;
+        }
+
+        ScreenConfiguration.gl.glGetProgramiv(shaderProgramHandle, GLES20.GL_ACTIVE_ATTRIBUTES, count, 0);
+        for (int i = 0; i < count[0]; i++)
+        {
+            ScreenConfiguration.gl.glGetActiveAttrib(shaderProgramHandle, i, name.length, length, 0, size, 0, type, 0,
+                    name, 0);
+            String attribute = trimArrayName(decodeName(name, length[0]));
+            attributeLocations.put(attribute, ScreenConfiguration.gl.glGetAttribLocation(shaderProgramHandle, attribute));
+        }
+    }
+
+    /**
+     * Turn a name GL wrote into a byte buffer into a string.  GLSL names are plain ASCII
+     * @param name buffer GL wrote into
+     * @param length characters written, not counting the terminator
+     * @return the name
+     */
+    private static String decodeName(byte[] name, int length)
+    {
+        char[] chars = new char[Math.max(0, Math.min(length, name.length))];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = (char) name[i];
+        return new String(chars);
+    }
+
+    /**
+     * Array uniforms are reported as name[0], we look them up by their plain name
+     * @param name name reported by GL
+     * @return name without the array suffix
+     */
+    private static String trimArrayName(String name)
+    {
+        if (name != null && name.endsWith("[0]"))
+            return name.substring(0, name.length() - 3);
+        return name;
+    }
+
+    /**
+     * Location of a uniform, resolved when the program was linked
+     * @param name name of the uniform in the shader
+     * @return location, or -1 if the program has no such active uniform
+     */
+    public int getUniformLocation(String name)
+    {
+        Integer location = uniformLocations.get(name);
+        return location == null ? -1 : location;
+    }
+
+    /**
+     * Location of an attribute, resolved when the program was linked
+     * @param name name of the attribute in the shader
+     * @return location, or -1 if the program has no such active attribute
+     */
+    public int getAttributeLocation(String name)
+    {
+        Integer location = attributeLocations.get(name);
+        return location == null ? -1 : location;
+    }
+
+    /**
+     * Upload a 4x4 matrix unless the uniform already holds the same values.  The program must be in use
+     * @param location location of the uniform
+     * @param matrix 16 floats, column major
+     */
+    public void setUniformMatrix(int location, float[] matrix)
+    {
+        int slot = findSlot(location);
+        if (slot < 0)
+            return;
+
+        float[] last = lastMatrices[slot];
+        if (uploaded[slot] && last != null && sameMatrix(last, matrix))
+            return;
+
+        if (last == null)
+            last = lastMatrices[slot] = new float[16];
+        System.arraycopy(matrix, 0, last, 0, 16);
+        uploaded[slot] = true;
+        ScreenConfiguration.gl.glUniformMatrix4fv(location, 1, false, matrix, 0);
+    }
+
+    /**
+     * Upload an int or sampler unless the uniform already holds the same value.  The program must be in use
+     * @param location location of the uniform
+     * @param value new value
+     */
+    public void setUniform(int location, int value)
+    {
+        int slot = findSlot(location);
+        if (slot < 0)
+            return;
+
+        if (uploaded[slot] && lastInts[slot] == value)
+            return;
+
+        lastInts[slot] = value;
+        uploaded[slot] = true;
+        ScreenConfiguration.gl.glUniform1i(location, value);
+    }
+
+    /**
+     * Upload the projection and view matrix.  The program must be in use
+     * @param matrixProjectionAndView matrix representing our projection and view
+     */
+    public void setMatrix(float[] matrixProjectionAndView)
+    {
+        setUniformMatrix(matrixHandle, matrixProjectionAndView);
+    }
+
+    /**
+     * Tell the sampler which texture unit to read from.  The program must be in use
+     * @param unit texture unit the texture is bound to
+     */
+    public void setSampler(int unit)
+    {
+        setUniform(samplerHandle, unit);
+    }
+
+    /**
+     * Find where we remember the value of a uniform
+     * @param location location of the uniform
+     * @return slot index, or -1 if the program has no such uniform
+     */
+    private int findSlot(int location)
+    {
+        if (location < 0)
+            return -1;
+        //programs only have a handful of uniforms, so a scan beats hashing
+        for (int i = 0; i < uniformSlots.length; i++)
+            if (uniformSlots[i] == location)
+                return i;
+        return -1;
+    }
+
+    /**
+     * Compare a matrix against the copy we last uploaded
+     * @param last copy of the last upload
+     * @param matrix matrix we were asked to upload
+     * @return true if every value matches
+     */
+    private static boolean sameMatrix(float[] last, float[] matrix)
+    {
+        for (int i = 0; i < 16; i++)
+            if (last[i] != matrix[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * Turn on the vertex attributes our program reads
+     */
+    public void enableAttributes()
+    {
+        GLState.enableAttribute(positionHandle);
+        GLState.enableAttribute(textureCoordinateHandle);
+    }
+
+    /**
+     * Turn off the vertex attributes our program reads
+     */
+    public void disableAttributes()
+    {
+        GLState.disableAttribute(positionHandle);
+        GLState.disableAttribute(textureCoordinateHandle);
+    }
+
+    /**
+     * Point our attributes at a client side stream of interleaved vertices (see VertexFormat)
+     * @param vertices buffer holding the vertices, starting at 0
+     */
+    public void setAttributePointers(ByteBuffer vertices)
+    {
+        vertices.position(VertexFormat.POSITION_OFFSET);
+        ScreenConfiguration.gl.glVertexAttribPointer(positionHandle, VertexFormat.POSITION_COMPONENTS,
+                GLES20.GL_FLOAT, false, VertexFormat.STRIDE, vertices);
+
+        vertices.position(VertexFormat.TEXTURE_OFFSET);
+        ScreenConfiguration.gl.glVertexAttribPointer(textureCoordinateHandle, VertexFormat.TEXTURE_COMPONENTS,
+                GLES20.GL_UNSIGNED_SHORT, true, VertexFormat.STRIDE, vertices);
+
+        vertices.position(0);
+    }
+
+    /**
+     * Point our attributes at interleaved vertices held in the bound GL_ARRAY_BUFFER
+     * @param byteOffset where the first vertex starts inside the buffer object
+     */
+    public void setAttributePointers(int byteOffset)
+    {
+        ScreenConfiguration.gl.glVertexAttribPointer(positionHandle, VertexFormat.POSITION_COMPONENTS,
+                GLES20.GL_FLOAT, false, VertexFormat.STRIDE, byteOffset + VertexFormat.POSITION_OFFSET);
+        ScreenConfiguration.gl.glVertexAttribPointer(textureCoordinateHandle, VertexFormat.TEXTURE_COMPONENTS,
+                GLES20.GL_UNSIGNED_SHORT, true, VertexFormat.STRIDE, byteOffset + VertexFormat.TEXTURE_OFFSET);
     }
 
     /**
@@ -153,6 +420,24 @@ public abstract class Program
         return matrixHandle;
     }
 
+    /**
+     * ID of our texture sampler
+     * @return sampler handle
+     */
+    public int getSamplerHandle()
+    {
+        return samplerHandle;
+    }
+
+    /**
+     * Small number identifying this program when render commands are sorted
+     * @return sort index
+     */
+    public int getSortIndex()
+    {
+        return sortIndex;
+    }
+
     /**
      * Return the ID of our image program
      * @return image program ID
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package android.graphics;
+
+/**
+ * Plain JVM stand in for the framework class, only what the library uses.  Holds a size and
+ * no pixels, four bytes a pixel like ARGB_8888
+ */
+public class Bitmap
+{
+    public enum Config
+    {
+        ALPHA_8,
+        RGB_565,
+        ARGB_4444,
+        ARGB_8888
+    }
+
+    private final int width;
+    private final int height;
+
+    public Bitmap(int width, int height)
+    {
+        this.width = width;
+        this.height = height;
+    }
+
+    public static Bitmap createBitmap(int width, int height, Config config)
+    {
+        return new Bitmap(width, height);
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    public int getByteCount()
+    {
+        return width * height * 4;
+    }
+
+    public void eraseColor(int color)
+    {
+    }
+
+    public void getPixels(int[] pixels, int offset, int stride, int x, int y, int width, int height)
+    {
+    }
+
+    public void setPixels(int[] pixels, int offset, int stride, int x, int y, int width, int height)
+    {
+    }
+
+    public void recycle()
+    {
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package android.graphics;
+
+/**
+ * Plain JVM stand in for the framework class, only what the library uses.  Draws nothing
+ */
+public class Canvas
+{
+    public Canvas(Bitmap bitmap)
+    {
+    }
+
+    public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint)
+    {
+    }
+
+    public void drawText(String text, float x, float y, Paint paint)
+    {
+    }
+
+    public void drawText(char[] text, int index, int count, float x, float y, Paint paint)
+    {
+    }
+
+    public void drawRect(float left, float top, float right, float bottom, Paint paint)
+    {
+    }
+}
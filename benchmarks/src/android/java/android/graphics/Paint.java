@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package android.graphics;
+
+/**
+ * Plain JVM stand in for the framework class, only what the library uses.  Text is measured as
+ * if every character were half the text size wide
+ */
+public class Paint
+{
+    public static class FontMetrics
+    {
+        public float top;
+        public float ascent;
+        public float descent;
+        public float bottom;
+        public float leading;
+    }
+
+    private float textSize = 12;
+
+    public Paint()
+    {
+    }
+
+    public Paint(Paint paint)
+    {
+        textSize = paint.textSize;
+    }
+
+    public void setAntiAlias(boolean aa)
+    {
+    }
+
+    public void setARGB(int a, int r, int g, int b)
+    {
+    }
+
+    public void setTextSize(float textSize)
+    {
+        this.textSize = textSize;
+    }
+
+    public float getTextSize()
+    {
+        return textSize;
+    }
+
+    public FontMetrics getFontMetrics()
+    {
+        FontMetrics metrics = new FontMetrics();
+        metrics.ascent = -textSize * 0.8f;
+        metrics.top = metrics.ascent;
+        metrics.descent = textSize * 0.2f;
+        metrics.bottom = metrics.descent;
+        return metrics;
+    }
+
+    public float measureText(char[] text, int index, int count)
+    {
+        return count * textSize / 2;
+    }
+
+    public void setTypeface(Typeface typeface)
+    {
+    }
+
+    public void setUnderlineText(boolean underlineText)
+    {
+    }
+
+    public void getTextBounds(String text, int start, int end, Rect bounds)
+    {
+        bounds.set(0, 0, (int) Math.ceil((end - start) * textSize / 2), (int) Math.ceil(textSize));
+    }
+
+    public void getTextBounds(char[] text, int index, int count, Rect bounds)
+    {
+        getTextBounds(new String(text), index, index + count, bounds);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package android.graphics;
+
+/**
+ * Plain JVM stand in for the framework class, only what the library uses
+ */
+public class PointF
+{
+    public float x;
+    public float y;
+
+    public PointF()
+    {
+    }
+
+    public PointF(float x, float y)
+    {
+        this.x = x;
+        this.y = y;
+    }
+
+    public void set(float x, float y)
+    {
+        this.x = x;
+        this.y = y;
+    }
+}
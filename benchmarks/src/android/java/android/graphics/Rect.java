@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package android.graphics;
+
+/**
+ * Plain JVM stand in for the framework class, only what the library uses
+ */
+public class Rect
+{
+    public int left;
+    public int top;
+    public int right;
+    public int bottom;
+
+    public Rect()
+    {
+    }
+
+    public Rect(int left, int top, int right, int bottom)
+    {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public Rect(Rect r)
+    {
+        this(r.left, r.top, r.right, r.bottom);
+    }
+
+    public void set(int left, int top, int right, int bottom)
+    {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public int width()
+    {
+        return right - left;
+    }
+
+    public int height()
+    {
+        return bottom - top;
+    }
+}
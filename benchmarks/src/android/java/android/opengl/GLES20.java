@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package android.opengl;
+
+import java.nio.Buffer;
+import java.nio.IntBuffer;
+
+/**
+ * Plain JVM stand in for the framework class.  Every call does nothing, so benchmarks measure
+ * the CPU side work the library does around GL and never the driver.  Only what the library
+ * uses is here, with the real constant values
+ */
+public class GLES20
+{
+    public static final int GL_ACTIVE_ATTRIBUTE_MAX_LENGTH = 0x8B8A;
+    public static final int GL_ACTIVE_ATTRIBUTES = 0x8B89;
+    public static final int GL_ACTIVE_UNIFORM_MAX_LENGTH = 0x8B87;
+    public static final int GL_ACTIVE_UNIFORMS = 0x8B86;
+    public static final int GL_ARRAY_BUFFER = 0x8892;
+    public static final int GL_BLEND = 0x0BE2;
+    public static final int GL_CLAMP_TO_EDGE = 0x812F;
+    public static final int GL_COMPILE_STATUS = 0x8B81;
+    public static final int GL_DYNAMIC_DRAW = 0x88E8;
+    public static final int GL_ELEMENT_ARRAY_BUFFER = 0x8893;
+    public static final int GL_FIXED = 0x140C;
+    public static final int GL_FLOAT = 0x1406;
+    public static final int GL_FRAGMENT_SHADER = 0x8B30;
+    public static final int GL_LINEAR = 0x2601;
+    public static final int GL_LINK_STATUS = 0x8B82;
+    public static final int GL_SHORT = 0x1402;
+    public static final int GL_STATIC_DRAW = 0x88E4;
+    public static final int GL_STREAM_DRAW = 0x88E0;
+    public static final int GL_TEXTURE0 = 0x84C0;
+    public static final int GL_TEXTURE_2D = 0x0DE1;
+    public static final int GL_TEXTURE_MAG_FILTER = 0x2800;
+    public static final int GL_TEXTURE_MIN_FILTER = 0x2801;
+    public static final int GL_TEXTURE_WRAP_S = 0x2802;
+    public static final int GL_TEXTURE_WRAP_T = 0x2803;
+    public static final int GL_TRIANGLES = 0x0004;
+    public static final int GL_UNSIGNED_SHORT = 0x1403;
+    public static final int GL_VERTEX_SHADER = 0x8B31;
+
+    public static void glActiveTexture(int texture) {}
+    public static void glAttachShader(int program, int shader) {}
+    public static void glBindBuffer(int target, int buffer) {}
+    public static void glBindTexture(int target, int texture) {}
+    public static void glBlendFunc(int sfactor, int dfactor) {}
+    public static void glBufferData(int target, int size, Buffer data, int usage) {}
+    public static void glBufferSubData(int target, int offset, int size, Buffer data) {}
+    public static void glClear(int mask) {}
+    public static void glClearColor(float red, float green, float blue, float alpha) {}
+    public static void glCompileShader(int shader) {}
+    public static int glCreateProgram() { return 0; }
+    public static int glCreateShader(int type) { return 0; }
+    public static void glDeleteBuffers(int n, int[] buffers, int offset) {}
+    public static void glDeleteProgram(int program) {}
+    public static void glDeleteShader(int shader) {}
+    public static void glDeleteTextures(int n, int[] textures, int offset) {}
+    public static void glDisable(int cap) {}
+    public static void glDisableVertexAttribArray(int index) {}
+    public static void glDrawElements(int mode, int count, int type, int offset) {}
+    public static void glEnable(int cap) {}
+    public static void glEnableVertexAttribArray(int index) {}
+    public static void glGenBuffers(int n, int[] buffers, int offset) {}
+    public static void glGenTextures(int n, IntBuffer textures) {}
+    public static void glGetActiveAttrib(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset) {}
+    public static void glGetActiveUniform(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset) {}
+    public static int glGetAttribLocation(int program, String name) { return -1; }
+    public static void glGetProgramiv(int program, int pname, int[] params, int offset) {}
+    public static String glGetShaderInfoLog(int shader) { return ""; }
+    public static void glGetShaderiv(int shader, int pname, int[] params, int offset) {}
+    public static int glGetUniformLocation(int program, String name) { return -1; }
+    public static void glLinkProgram(int program) {}
+    public static void glShaderSource(int shader, String string) {}
+    public static void glTexParameteri(int target, int pname, int param) {}
+    public static void glUniform1f(int location, float x) {}
+    public static void glUniform1i(int location, int x) {}
+    public static void glUniform4f(int location, float x, float y, float z, float w) {}
+    public static void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {}
+    public static void glUseProgram(int program) {}
+    public static void glVertexAttribPointer(int indx, int size, int type, boolean normalized, int stride, Buffer ptr) {}
+    public static void glVertexAttribPointer(int indx, int size, int type, boolean normalized, int stride, int offset) {}
+    public static void glViewport(int x, int y, int width, int height) {}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package android.view;
+
+/**
+ * Plain JVM stand in for the framework class, only what the library uses.  Every event is a
+ * single pointer DOWN at 0,0
+ */
+public class MotionEvent
+{
+    public static final int ACTION_DOWN = 0;
+    public static final int ACTION_UP = 1;
+    public static final int ACTION_MOVE = 2;
+    public static final int ACTION_CANCEL = 3;
+    public static final int ACTION_POINTER_DOWN = 5;
+    public static final int ACTION_POINTER_UP = 6;
+
+    public final int getActionMasked()
+    {
+        return ACTION_DOWN;
+    }
+
+    public final int getActionIndex()
+    {
+        return 0;
+    }
+
+    public final int getPointerCount()
+    {
+        return 1;
+    }
+
+    public final int getPointerId(int pointerIndex)
+    {
+        return 0;
+    }
+
+    public final float getX(int pointerIndex)
+    {
+        return 0;
+    }
+
+    public final float getY(int pointerIndex)
+    {
+        return 0;
+    }
+
+    public final long getEventTime()
+    {
+        return 0;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ca.coffeeshopstudio.icegl.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import ca.coffeeshopstudio.icegl.gl.GLObject;
+import ca.coffeeshopstudio.icegl.gl.RenderQueue;
+import ca.coffeeshopstudio.icegl.gl.ScreenConfiguration;
+import ca.coffeeshopstudio.icegl.gl.SpriteBatch;
+import ca.coffeeshopstudio.icegl.gl.VertexFormat;
+
+/**
+ * Building the vertex stream of a frame.  GL calls do nothing here, so this is the CPU cost of
+ * packing quads, sorting the render queue and copying objects into the sprite batch
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BufferBenchmark
+{
+    private static final int TEXTURES = 8;
+
+    @Param({"100", "1000", "10000"})
+    public int quads;
+
+    private ByteBuffer stream;
+    private SpriteBatch batch;
+    private RenderQueue queue;
+    private GLObject[] objects;
+    private final float[] matrix = new float[16];
+
+    @Setup
+    public void setup()
+    {
+        stream = ByteBuffer.allocateDirect(quads * VertexFormat.BYTES_PER_QUAD).order(ByteOrder.nativeOrder());
+        batch = new SpriteBatch();
+        queue = new RenderQueue();
+
+        //a screen of small controls spread over a few textures
+        objects = new GLObject[quads];
+        for (int i = 0; i < quads; i++)
+        {
+            objects[i] = new GLObject();
+            objects[i].setTextureID(i % TEXTURES);
+            objects[i].setLeft(i % 100);
+            objects[i].setBottom(i / 100);
+            objects[i].generateVertices();
+            objects[i].generateTextures();
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer putQuads()
+    {
+        for (int i = 0; i < quads; i++)
+            VertexFormat.putQuad(stream, i * VertexFormat.BYTES_PER_QUAD, i, i, i + 32, i + 32, 0, 0, 1, 1);
+        return stream;
+    }
+
+    @Benchmark
+    public SpriteBatch batchQuads()
+    {
+        batch.begin(matrix);
+        for (int i = 0; i < quads; i++)
+            batch.drawQuad(i % TEXTURES, i, i, 32, 32, 0, 0, 1, 1);
+        batch.end();
+        return batch;
+    }
+
+    @Benchmark
+    public SpriteBatch queueObjects()
+    {
+        //the path every control takes each frame
+        queue.begin();
+        batch.begin(matrix);
+        for (int i = 0; i < quads; i++)
+            queue.submit(objects[i], RenderQueue.LAYER_DEFAULT, 0);
+        queue.execute(batch);
+        batch.end();
+        return batch;
+    }
+
+    @Benchmark
+    public SpriteBatch queueQuads()
+    {
+        queue.begin();
+        batch.begin(matrix);
+        for (int i = 0; i < quads; i++)
+            queue.submitQuad(ScreenConfiguration.imageProgram, i % TEXTURES, RenderQueue.LAYER_DEFAULT,
+                    i, i, 32, 32, 0, 0, 1, 1);
+        queue.execute(batch);
+        batch.end();
+        return batch;
+    }
+}
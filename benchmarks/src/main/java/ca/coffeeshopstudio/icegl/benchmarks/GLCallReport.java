@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ca.coffeeshopstudio.icegl.benchmarks;
+
+import java.util.Map;
+
+import ca.coffeeshopstudio.icegl.gl.GLObject;
+import ca.coffeeshopstudio.icegl.gl.GLState;
+import ca.coffeeshopstudio.icegl.gl.RecordingGLBackend;
+import ca.coffeeshopstudio.icegl.gl.RenderQueue;
+import ca.coffeeshopstudio.icegl.gl.ScreenConfiguration;
+
+/**
+ * Renders a typical screen through the real render queue and sprite batch against the
+ * recording backend and prints what each frame costs in GL calls and uploads.  The first frame
+ * includes the one off uploads, later frames show the steady state.
+ *
+ *   ./gradlew :benchmarks:glCallReport [-Pcontrols=200 -Ptextures=4 -Ptiles=64]
+ */
+public class GLCallReport
+{
+    private static final int FRAMES = 3;
+
+    public static void main(String[] args)
+    {
+        int controls = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int textures = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int tiles = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+        RecordingGLBackend gl = new RecordingGLBackend();
+        ScreenConfiguration.gl = gl;
+        GLState.invalidate();
+        ScreenConfiguration.imageProgram.buildShaders();
+
+        //buttons and labels spread over a few textures
+        GLObject[] objects = new GLObject[controls];
+        for (int i = 0; i < controls; i++)
+        {
+            objects[i] = new GLObject();
+            objects[i].setTextureID(1 + i % textures);
+            objects[i].setLeft(i % 20);
+            objects[i].setBottom(i / 20);
+            objects[i].generateVertices();
+            objects[i].generateTextures();
+        }
+
+        //a tile map kept in a buffer object
+        GLObject map = new GLObject();
+        map.setStorageMode(GLObject.STORAGE_BUFFER_OBJECT);
+        map.setCloneCount(tiles * tiles);
+        map.setTextureID(textures + 1);
+        for (int i = 0; i < tiles * tiles; i++)
+            map.setCloneDimensions(i, (i % tiles) * 32, (i / tiles) * 32, 32, 32);
+
+        float[] matrix = new float[16];
+        System.out.println(controls + " controls on " + textures + " textures, " + tiles + "x" + tiles + " tile map");
+        for (int frame = 1; frame <= FRAMES; frame++)
+        {
+            gl.reset();
+
+            //what GLScreen.onDrawFrame does
+            GLState.beginFrame();
+            GLState.clearColor(0, 0, 0, 1);
+            ScreenConfiguration.gl.glClear(0);
+            RenderQueue queue = ScreenConfiguration.renderQueue;
+            queue.begin();
+            ScreenConfiguration.spriteBatch.begin(matrix);
+            queue.submit(map, RenderQueue.LAYER_BACKGROUND, 0);
+            for (GLObject glo : objects)
+                queue.submit(glo, RenderQueue.LAYER_DEFAULT, 0);
+            queue.execute(ScreenConfiguration.spriteBatch);
+            ScreenConfiguration.spriteBatch.end();
+
+            System.out.println();
+            System.out.println("frame " + frame + ": " + gl.getTotalCalls() + " calls, " + gl.getDrawCalls()
+                    + " draws, " + gl.getIndicesDrawn() / 6 + " quads, " + gl.getBytesUploaded() + " bytes uploaded, "
+                    + gl.getClientBytes() + " client vertex bytes, "
+                    + GLState.getDroppedCalls() + " redundant calls dropped");
+            for (Map.Entry<String, Integer> entry : gl.getCallCounts().entrySet())
+                System.out.println("  " + entry.getKey() + " " + entry.getValue());
+        }
+    }
+}
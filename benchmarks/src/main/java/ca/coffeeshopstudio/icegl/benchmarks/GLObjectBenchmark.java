@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ca.coffeeshopstudio.icegl.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import ca.coffeeshopstudio.icegl.gl.GLObject;
+
+/**
+ * Writing the geometry of an object with many clones, the work done whenever a control or tile
+ * map rebuilds.  Writes that don't change anything are skipped by GLObject, so every call moves
+ * the object to make sure the full cost is measured
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GLObjectBenchmark
+{
+    @Param({"1", "100", "1000", "10000", "50000"})
+    public int clones;
+
+    private GLObject glo;
+    private boolean flip = false;
+
+    @Setup
+    public void setup()
+    {
+        glo = new GLObject();
+        glo.setCloneCount(clones);
+        glo.setWidth(32);
+        glo.setHeight(32);
+    }
+
+    @Benchmark
+    public GLObject generateVertices()
+    {
+        flip = !flip;
+        glo.setLeft(flip ? 1 : 2);
+        glo.generateVertices();
+        return glo;
+    }
+
+    @Benchmark
+    public GLObject generateTextures()
+    {
+        flip = !flip;
+        glo.setTexture(flip ? 1 : 2, 0);
+        glo.generateTextures();
+        return glo;
+    }
+
+    @Benchmark
+    public GLObject generateIndices()
+    {
+        glo.generateIndices();
+        return glo;
+    }
+
+    @Benchmark
+    public GLObject setCloneDimensions()
+    {
+        flip = !flip;
+        float offset = flip ? 1 : 2;
+        for (int i = 0; i < clones; i++)
+            glo.setCloneDimensions(i, i * 32 + offset, offset, 32, 32);
+        return glo;
+    }
+}
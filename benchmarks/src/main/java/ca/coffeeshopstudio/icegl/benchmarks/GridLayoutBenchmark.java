@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ca.coffeeshopstudio.icegl.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+import ca.coffeeshopstudio.icegl.gl.ScreenConfiguration;
+
+/**
+ * Laying controls out on the ScreenConfiguration grid, as happens for every control when the
+ * surface changes size
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GridLayoutBenchmark
+{
+    @Param({"12", "48"})
+    public int tiles;
+
+    @Param({"100", "1000"})
+    public int controls;
+
+    private float[] layout;
+    private boolean portrait = false;
+
+    @Setup
+    public void setup()
+    {
+        ScreenConfiguration.setHorizontalTiles(tiles);
+        ScreenConfiguration.setVerticalTiles(tiles);
+        layout = new float[controls * 4];
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        ScreenConfiguration.setHorizontalTiles(12);
+        ScreenConfiguration.setVerticalTiles(12);
+    }
+
+    @Benchmark
+    public float[] rotate()
+    {
+        portrait = !portrait;
+        if (portrait)
+            ScreenConfiguration.setTileSize(1080, 1920);
+        else
+            ScreenConfiguration.setTileSize(1920, 1080);
+
+        //what each control does in onSurfaceChanged, turn grid units into positions
+        for (int i = 0; i < controls; i++)
+        {
+            int gridLeft = i % tiles;
+            int gridBottom = (i / tiles) % tiles;
+            int q = i * 4;
+            layout[q] = gridLeft * ScreenConfiguration.getTileWidth();
+            layout[q + 1] = gridBottom * ScreenConfiguration.getTileHeight();
+            layout[q + 2] = 2 * ScreenConfiguration.getTileWidth();
+            layout[q + 3] = ScreenConfiguration.getTileHeight();
+        }
+        return layout;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package ca.coffeeshopstudio.icegl.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import ca.coffeeshopstudio.icegl.gl.RectGL;
+import ca.coffeeshopstudio.icegl.gl.SpatialGrid;
+
+/**
+ * Finding the control under a touch among N controls spread over a 12 by 12 tile screen.  The
+ * linear scan is how touches used to be resolved, kept as the baseline for the grid
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HitTestBenchmark
+{
+    private static final int TILES = 12;
+    private static final float TILE_SIZE = 100;
+    private static final int POINTS = 1024; //power of two
+
+    @Param({"10", "100", "1000", "10000"})
+    public int controls;
+
+    private SpatialGrid<RectGL> grid;
+    private RectGL[] bounds;
+    private float[] pointX;
+    private float[] pointY;
+    private int next = 0;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(42);
+        float extent = TILES * TILE_SIZE;
+        grid = new SpatialGrid<>(TILES, TILES, TILE_SIZE, TILE_SIZE);
+        bounds = new RectGL[controls];
+        for (int i = 0; i < controls; i++)
+        {
+            //controls between a quarter tile and two tiles in size
+            float width = TILE_SIZE * (0.25f + random.nextFloat() * 1.75f);
+            float height = TILE_SIZE * (0.25f + random.nextFloat() * 1.75f);
+            bounds[i] = new RectGL(random.nextFloat() * (extent - width), random.nextFloat() * (extent - height),
+                    width, height);
+            grid.update(bounds[i], bounds[i].left, bounds[i].bottom, bounds[i].width, bounds[i].height);
+        }
+
+        pointX = new float[POINTS];
+        pointY = new float[POINTS];
+        for (int i = 0; i < POINTS; i++)
+        {
+            pointX[i] = random.nextFloat() * extent;
+            pointY[i] = random.nextFloat() * extent;
+        }
+    }
+
+    @Benchmark
+    public RectGL grid()
+    {
+        int i = next++ & (POINTS - 1);
+        return grid.find(pointX[i], pointY[i], null);
+    }
+
+    @Benchmark
+    public RectGL linearScan()
+    {
+        int i = next++ & (POINTS - 1);
+        float x = pointX[i];
+        float y = pointY[i];
+        //last added is on top, so search from the end
+        for (int c = bounds.length - 1; c >= 0; c--)
+        {
+            RectGL rect = bounds[c];
+            if (x > rect.left && x < rect.left + rect.width && y > rect.bottom && y < rect.bottom + rect.height)
+                return rect;
+        }
+        return null;
+    }
+
+    @Benchmark
+    public SpatialGrid<RectGL> move()
+    {
+        //one control dragged a little each call, as during a drag
+        int i = next++ % controls;
+        RectGL rect = bounds[i];
+        rect.left = (rect.left + 7) % (TILES * TILE_SIZE - rect.width);
+        grid.update(rect, rect.left, rect.bottom, rect.width, rect.height);
+        return grid;
+    }
+}
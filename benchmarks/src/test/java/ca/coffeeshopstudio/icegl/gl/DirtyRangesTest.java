@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.coffeeshopstudio.icegl.gl;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Range tracking of changed clones
+ */
+public class DirtyRangesTest
+{
+    private DirtyRanges ranges;
+
+    @Before
+    public void setUp()
+    {
+        ranges = new DirtyRanges();
+    }
+
+    /**
+     * Returns whether any range covers the clone
+     */
+    private boolean covers(int clone)
+    {
+        for (int i = 0; i < ranges.getRangeCount(); i++)
+            if (clone >= ranges.getFirst(i) && clone <= ranges.getLast(i))
+                return true;
+        return false;
+    }
+
+    @Test
+    public void startsClean()
+    {
+        assertFalse(ranges.isDirty());
+        assertEquals(0, ranges.getRangeCount());
+    }
+
+    @Test
+    public void neighbouringClonesShareARange()
+    {
+        ranges.mark(5);
+        ranges.mark(6);
+        ranges.mark(4);
+        ranges.mark(5);
+        assertEquals(1, ranges.getRangeCount());
+        assertEquals(4, ranges.getFirst(0));
+        assertEquals(6, ranges.getLast(0));
+    }
+
+    @Test
+    public void distantClonesGetTheirOwnRanges()
+    {
+        ranges.mark(0);
+        ranges.mark(10);
+        assertEquals(2, ranges.getRangeCount());
+    }
+
+    @Test
+    public void cloneJoiningAnOlderRangeExtendsIt()
+    {
+        ranges.mark(0);
+        ranges.mark(10);
+        ranges.mark(1);
+        assertEquals(2, ranges.getRangeCount());
+        assertTrue(covers(1));
+    }
+
+    @Test
+    public void tooManyRangesCollapseWithoutLosingClones()
+    {
+        for (int clone = 0; clone <= 200; clone += 10)
+            ranges.mark(clone);
+        assertTrue(ranges.getRangeCount() <= 8);
+        for (int clone = 0; clone <= 200; clone += 10)
+            assertTrue("clone " + clone, covers(clone));
+    }
+
+    @Test
+    public void markAllCoversEveryClone()
+    {
+        ranges.mark(7);
+        ranges.markAll(20);
+        assertEquals(1, ranges.getRangeCount());
+        assertEquals(0, ranges.getFirst(0));
+        assertEquals(19, ranges.getLast(0));
+    }
+
+    @Test
+    public void markAllOfNothingStaysClean()
+    {
+        ranges.markAll(0);
+        assertFalse(ranges.isDirty());
+    }
+
+    @Test
+    public void clearForgetsEverything()
+    {
+        ranges.mark(3);
+        ranges.clear();
+        assertFalse(ranges.isDirty());
+    }
+}
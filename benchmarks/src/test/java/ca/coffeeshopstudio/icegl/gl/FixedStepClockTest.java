@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.coffeeshopstudio.icegl.gl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Step counting of the fixed step clock, 10ms steps unless a test says otherwise
+ */
+public class FixedStepClockTest
+{
+    private static final long MS = 1000000;
+    private static final float DELTA = 1e-6f;
+
+    @Test
+    public void firstFrameOnlyStartsTheClock()
+    {
+        FixedStepClock clock = new FixedStepClock(0.01f, 5, 0.25f);
+        assertEquals(0, clock.advance(1000 * MS));
+    }
+
+    @Test
+    public void elapsedTimeBecomesWholeSteps()
+    {
+        FixedStepClock clock = new FixedStepClock(0.01f, 5, 0.25f);
+        clock.advance(0);
+        assertEquals(3, clock.advance(35 * MS));
+        assertEquals(0.5f, clock.getAlpha(), DELTA);
+    }
+
+    @Test
+    public void leftoverTimeCarriesToTheNextFrame()
+    {
+        FixedStepClock clock = new FixedStepClock(0.01f, 5, 0.25f);
+        clock.advance(0);
+        clock.advance(6 * MS);
+        assertEquals(1, clock.advance(12 * MS));
+    }
+
+    @Test
+    public void stepsPerFrameAreCapped()
+    {
+        FixedStepClock clock = new FixedStepClock(0.01f, 5, 0.25f);
+        clock.advance(0);
+        assertEquals(5, clock.advance(200 * MS));
+        assertEquals(0.15f, clock.getDroppedTime(), DELTA);
+    }
+
+    @Test
+    public void longFramesAreClampedBeforeCounting()
+    {
+        FixedStepClock clock = new FixedStepClock(0.01f, 100, 0.05f);
+        clock.advance(0);
+        assertEquals(5, clock.advance(1000 * MS));
+        assertEquals(1.0f, clock.getFrameTime(), DELTA);
+        assertEquals(0.95f, clock.getDroppedTime(), DELTA);
+    }
+
+    @Test
+    public void timeGoingBackwardsCountsAsNothing()
+    {
+        FixedStepClock clock = new FixedStepClock(0.01f, 5, 0.25f);
+        clock.advance(100 * MS);
+        assertEquals(0, clock.advance(50 * MS));
+        assertEquals(0, clock.getFrameTime(), DELTA);
+    }
+
+    @Test
+    public void resetSkipsTheGap()
+    {
+        FixedStepClock clock = new FixedStepClock(0.01f, 5, 0.25f);
+        clock.advance(0);
+        clock.advance(5 * MS);
+        clock.reset(10000 * MS);
+        assertEquals(0, clock.advance(10000 * MS));
+        assertEquals(0, clock.getAlpha(), DELTA);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void frameMustHoldAStep()
+    {
+        new FixedStepClock(0.1f, 5, 0.05f);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.coffeeshopstudio.icegl.gl;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ca.coffeeshopstudio.icegl.programs.Program;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Draw order produced by the render queue's sort
+ */
+public class RenderQueueTest
+{
+    /**
+     * Batch that remembers what it was asked to draw instead of drawing it
+     */
+    private static class RecordingBatch extends SpriteBatch
+    {
+        final List<GLObject> drawn = new ArrayList<>();
+        final List<Integer> quadTextures = new ArrayList<>();
+
+        @Override
+        public void draw(GLObject glo)
+        {
+            drawn.add(glo);
+        }
+
+        @Override
+        public void drawQuad(Program program, int textureID, float left, float bottom, float width, float height,
+                             float u0, float v0, float u1, float v1)
+        {
+            quadTextures.add(textureID);
+        }
+    }
+
+    private RenderQueue queue;
+    private RecordingBatch batch;
+
+    @Before
+    public void setUp()
+    {
+        ScreenConfiguration.gl = new RecordingGLBackend();
+        GLState.invalidate();
+        queue = new RenderQueue();
+        batch = new RecordingBatch();
+        queue.begin();
+    }
+
+    private static GLObject object(int textureID)
+    {
+        GLObject glo = new GLObject();
+        glo.setTextureID(textureID);
+        return glo;
+    }
+
+    @Test
+    public void emptyQueueDrawsNothing()
+    {
+        queue.execute(batch);
+        assertTrue(batch.drawn.isEmpty());
+    }
+
+    @Test
+    public void laterControlDrawsOverEarlierControlsText()
+    {
+        GLObject labelText = object(1);
+        GLObject buttonBackground = object(2);
+        queue.setDepth(0);
+        queue.submit(labelText, RenderQueue.LAYER_DEFAULT, 1);
+        queue.setDepth(1);
+        queue.submit(buttonBackground, RenderQueue.LAYER_DEFAULT, 0);
+        queue.execute(batch);
+        assertEquals(Arrays.asList(labelText, buttonBackground), batch.drawn);
+    }
+
+    @Test
+    public void textureDoesNotReorderOverlappingControls()
+    {
+        GLObject backdrop = object(9);
+        GLObject overlay = object(1);
+        queue.setDepth(0);
+        queue.submit(backdrop, RenderQueue.LAYER_BACKGROUND, 0);
+        queue.setDepth(1);
+        queue.submit(overlay, RenderQueue.LAYER_BACKGROUND, 0);
+        queue.execute(batch);
+        assertEquals(Arrays.asList(backdrop, overlay), batch.drawn);
+    }
+
+    @Test
+    public void higherLayerDrawsLast()
+    {
+        GLObject dialog = object(1);
+        GLObject background = object(1);
+        queue.setDepth(1);
+        queue.submit(dialog, RenderQueue.LAYER_DIALOG, 0);
+        queue.setDepth(0);
+        queue.submit(background, RenderQueue.LAYER_BACKGROUND, 0);
+        queue.execute(batch);
+        assertEquals(Arrays.asList(background, dialog), batch.drawn);
+    }
+
+    @Test
+    public void passesOfOneControlDrawInOrder()
+    {
+        GLObject text = object(1);
+        GLObject background = object(2);
+        queue.submit(text, RenderQueue.LAYER_DEFAULT, 1);
+        queue.submit(background, RenderQueue.LAYER_DEFAULT, 0);
+        queue.execute(batch);
+        assertEquals(Arrays.asList(background, text), batch.drawn);
+    }
+
+    @Test
+    public void oneControlGroupsByTexture()
+    {
+        GLObject a = object(2);
+        GLObject b = object(1);
+        GLObject c = object(2);
+        queue.submit(a, RenderQueue.LAYER_DEFAULT, 0);
+        queue.submit(b, RenderQueue.LAYER_DEFAULT, 0);
+        queue.submit(c, RenderQueue.LAYER_DEFAULT, 0);
+        queue.execute(batch);
+        assertEquals(Arrays.asList(b, a, c), batch.drawn);
+    }
+
+    @Test
+    public void separateControlsGroupByTexture()
+    {
+        //three controls overlapping nothing, so the screen gives each of them depth 0
+        GLObject[] backgrounds = { object(2), object(2), object(2) };
+        GLObject[] texts = { object(1), object(3), object(1) };
+        queue.setDepth(0);
+        for (int i = 0; i < 3; i++)
+        {
+            queue.submit(backgrounds[i], RenderQueue.LAYER_DEFAULT, 0);
+            queue.submit(texts[i], RenderQueue.LAYER_DEFAULT, 1);
+        }
+        queue.execute(batch);
+        assertEquals(Arrays.asList(backgrounds[0], backgrounds[1], backgrounds[2], texts[0], texts[2], texts[1]),
+                batch.drawn);
+    }
+
+    @Test
+    public void groupingStopsAtOverlappingControls()
+    {
+        GLObject a = object(2);
+        GLObject b = object(1);
+        GLObject c = object(2);
+        queue.setDepth(0);
+        queue.submit(a, RenderQueue.LAYER_DEFAULT, 0);
+        queue.submit(b, RenderQueue.LAYER_DEFAULT, 0);
+        //c overlaps b, so it must not join a's batch beneath b
+        queue.setDepth(1);
+        queue.submit(c, RenderQueue.LAYER_DEFAULT, 0);
+        queue.execute(batch);
+        assertEquals(Arrays.asList(b, a, c), batch.drawn);
+    }
+
+    @Test
+    public void equalKeysKeepSubmissionOrderPastCapacity()
+    {
+        //more commands than the queue starts with room for, all sharing one key
+        List<GLObject> submitted = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+        {
+            GLObject glo = object(3);
+            submitted.add(glo);
+            queue.submit(glo, RenderQueue.LAYER_DEFAULT, 0);
+        }
+        queue.execute(batch);
+        assertEquals(submitted, batch.drawn);
+    }
+
+    @Test
+    public void quadsAndObjectsShareOneOrder()
+    {
+        GLObject glo = object(5);
+        queue.submitQuad(ScreenConfiguration.imageProgram, 7, RenderQueue.MAX_LAYER, 0, 0, 1, 1, 0, 0, 1, 1);
+        queue.submit(glo, RenderQueue.LAYER_DEFAULT, 0);
+        queue.execute(batch);
+        assertEquals(Arrays.asList(glo), batch.drawn);
+        assertEquals(Arrays.asList(7), batch.quadTextures);
+    }
+
+    @Test
+    public void executeEmptiesTheQueue()
+    {
+        queue.submit(object(1), RenderQueue.LAYER_DEFAULT, 0);
+        queue.execute(batch);
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void keyFieldsRankLayerDepthPassProgramTexture()
+    {
+        int maxTexture = 0xFFFFF;
+        assertTrue(RenderQueue.buildKey(1, 0, 0, 0, 0) > RenderQueue.buildKey(0, RenderQueue.MAX_DEPTH,
+                RenderQueue.MAX_PASS, 255, maxTexture));
+        assertTrue(RenderQueue.buildKey(0, 1, 0, 0, 0) > RenderQueue.buildKey(0, 0, RenderQueue.MAX_PASS, 255,
+                maxTexture));
+        assertTrue(RenderQueue.buildKey(0, 0, 1, 0, 0) > RenderQueue.buildKey(0, 0, 0, 255, maxTexture));
+        assertTrue(RenderQueue.buildKey(0, 0, 0, 1, 0) > RenderQueue.buildKey(0, 0, 0, 0, maxTexture));
+    }
+
+    @Test
+    public void keyFieldsAreClamped()
+    {
+        assertEquals(RenderQueue.buildKey(0, 0, 0, 0, 0), RenderQueue.buildKey(-5, -1, -2, 0, 0));
+        assertEquals(RenderQueue.buildKey(RenderQueue.MAX_LAYER, RenderQueue.MAX_DEPTH, RenderQueue.MAX_PASS, 0, 0),
+                RenderQueue.buildKey(500, 1 << 20, 99, 0, 0));
+    }
+}
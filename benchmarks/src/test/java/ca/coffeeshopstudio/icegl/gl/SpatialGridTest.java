@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.coffeeshopstudio.icegl.gl;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Cell placement and lookups of the spatial grid, a 4 by 4 grid of 10 unit cells
+ */
+public class SpatialGridTest
+{
+    private SpatialGrid<String> grid;
+
+    @Before
+    public void setUp()
+    {
+        grid = new SpatialGrid<>(4, 4, 10, 10);
+    }
+
+    @Test
+    public void tileAlignedItemOnlyListedInItsOwnCell()
+    {
+        grid.update("tile", 10, 10, 10, 10);
+        assertEquals(1, grid.getCellCount("tile"));
+    }
+
+    @Test
+    public void itemTouchingTheBorderStaysInTheGrid()
+    {
+        grid.update("corner", 30, 30, 10, 10);
+        assertEquals(1, grid.getCellCount("corner"));
+    }
+
+    @Test
+    public void itemStraddlingCellsIsListedInEach()
+    {
+        grid.update("item", 5, 5, 10, 10);
+        assertEquals(4, grid.getCellCount("item"));
+    }
+
+    @Test
+    public void partlyOutsideItemIsClampedIntoBorderCells()
+    {
+        grid.update("item", -5, -5, 10, 10);
+        assertEquals(1, grid.getCellCount("item"));
+        assertEquals("item", grid.find(2, 2, null));
+        assertEquals("item", grid.find(-2, -2, null));
+    }
+
+    @Test
+    public void pointOutsideTheGridFindsItemsReachingThere()
+    {
+        grid.update("wide", 20, 0, 100, 10);
+        assertEquals("wide", grid.find(75, 5, null));
+        assertNull(grid.find(75, 15, null));
+    }
+
+    @Test
+    public void edgesAreExclusive()
+    {
+        grid.update("left", 0, 0, 10, 10);
+        grid.update("right", 10, 0, 10, 10);
+        assertNull(grid.find(10, 5, null));
+        assertNull(grid.find(5, 10, null));
+        assertEquals("right", grid.find(11, 5, null));
+    }
+
+    @Test
+    public void emptyItemIsNeverFound()
+    {
+        grid.update("empty", 10, 10, 0, 0);
+        assertEquals(0, grid.getCellCount("empty"));
+        assertNull(grid.find(10, 10, null));
+    }
+
+    @Test
+    public void laterItemWinsTies()
+    {
+        grid.update("first", 0, 0, 20, 20);
+        grid.update("second", 5, 5, 20, 20);
+        assertEquals("second", grid.find(10, 10, null));
+    }
+
+    @Test
+    public void higherPriorityWins()
+    {
+        grid.update("high", 0, 0, 20, 20);
+        grid.update("low", 5, 5, 20, 20);
+        grid.setPriority("high", 1);
+        assertEquals("high", grid.find(10, 10, null));
+    }
+
+    @Test
+    public void matcherSkipsRejectedItems()
+    {
+        grid.update("under", 0, 0, 20, 20);
+        grid.update("over", 5, 5, 20, 20);
+        String found = grid.find(10, 10, new SpatialGrid.Matcher<String>()
+        {
+            @Override
+            public boolean matches(String item)
+            {
+                return !item.equals("over");
+            }
+        });
+        assertEquals("under", found);
+    }
+
+    @Test
+    public void findAllOrdersByPriority()
+    {
+        grid.update("a", 0, 0, 20, 20);
+        grid.update("b", 0, 0, 20, 20);
+        grid.update("c", 0, 0, 20, 20);
+        grid.setPriority("a", 5);
+        List<String> found = new ArrayList<>();
+        grid.findAll(10, 10, found);
+        assertEquals(Arrays.asList("a", "c", "b"), found);
+    }
+
+    @Test
+    public void movedItemLeavesItsOldCells()
+    {
+        grid.update("item", 0, 0, 10, 10);
+        grid.update("item", 25, 25, 10, 10);
+        assertNull(grid.find(5, 5, null));
+        assertEquals("item", grid.find(30, 30, null));
+        assertEquals(4, grid.getCellCount("item"));
+    }
+
+    @Test
+    public void removedItemIsGone()
+    {
+        grid.update("item", 0, 0, 10, 10);
+        grid.remove("item");
+        assertNull(grid.find(5, 5, null));
+        assertEquals(0, grid.size());
+    }
+
+    @Test
+    public void resizePlacesItemsAgain()
+    {
+        grid.update("item", 10, 10, 10, 10);
+        grid.resize(2, 2, 20, 20);
+        assertEquals(1, grid.getCellCount("item"));
+        assertEquals("item", grid.find(15, 15, null));
+    }
+
+    @Test
+    public void overlappingItemsAreFoundOnce()
+    {
+        grid.update("wide", 0, 0, 30, 10);
+        grid.update("over", 5, 5, 20, 20);
+        grid.update("edge", 30, 0, 10, 10);
+        List<String> found = new ArrayList<>();
+        grid.findOverlapping("wide", found);
+        assertEquals(Arrays.asList("over"), found);
+    }
+
+    @Test
+    public void separateItemsDontOverlap()
+    {
+        grid.update("left", 0, 0, 10, 10);
+        grid.update("right", 15, 0, 10, 10);
+        List<String> found = new ArrayList<>();
+        grid.findOverlapping("left", found);
+        assertEquals(0, found.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void gridNeedsACell()
+    {
+        new SpatialGrid<String>(0, 4, 10, 10);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.coffeeshopstudio.icegl.gl;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Reference counting and eviction of the text texture cache.  Every test bitmap is 10 by 10,
+ * 400 bytes
+ */
+public class TextTextureCacheTest
+{
+    private static final int BYTES = 400;
+
+    @Before
+    public void setUp()
+    {
+        ScreenConfiguration.gl = new RecordingGLBackend();
+        GLState.invalidate();
+        TextTextureCache.invalidateAll();
+        TextTextureCache.setBudget(TextTextureCache.DEFAULT_BUDGET);
+    }
+
+    @After
+    public void tearDown()
+    {
+        TextTextureCache.invalidateAll();
+        TextTextureCache.setBudget(TextTextureCache.DEFAULT_BUDGET);
+    }
+
+    private static TextTextureCache.Entry cache(String key)
+    {
+        return TextTextureCache.acquire(key, new GLText.TextBitmap(new Bitmap(10, 10), new Rect(0, 0, 8, 8)));
+    }
+
+    @Test
+    public void missingTextIsNotCached()
+    {
+        assertNull(TextTextureCache.acquire("missing"));
+    }
+
+    @Test
+    public void sameTextSharesOneEntry()
+    {
+        TextTextureCache.Entry first = cache("ok");
+        assertSame(first, TextTextureCache.acquire("ok"));
+        assertSame(first, cache("ok"));
+        assertEquals(1, TextTextureCache.size());
+        assertEquals(BYTES, TextTextureCache.getBytesUsed());
+    }
+
+    @Test
+    public void heldEntriesSurviveAnyBudget()
+    {
+        cache("a");
+        cache("b");
+        TextTextureCache.setBudget(0);
+        assertEquals(2, TextTextureCache.size());
+    }
+
+    @Test
+    public void entryIsEvictedOnceEveryHolderReleases()
+    {
+        TextTextureCache.setBudget(0);
+        TextTextureCache.Entry entry = cache("a");
+        TextTextureCache.acquire("a");
+        TextTextureCache.release(entry);
+        assertEquals(1, TextTextureCache.size());
+        TextTextureCache.release(entry);
+        assertEquals(0, TextTextureCache.size());
+        assertEquals(0, TextTextureCache.getBytesUsed());
+    }
+
+    @Test
+    public void leastRecentlyUsedGoesFirst()
+    {
+        TextTextureCache.setBudget(2 * BYTES);
+        TextTextureCache.release(cache("old"));
+        TextTextureCache.release(cache("used"));
+        TextTextureCache.release(TextTextureCache.acquire("old"));
+        TextTextureCache.release(cache("new"));
+        assertNull(TextTextureCache.acquire("used"));
+        assertNotNull(TextTextureCache.acquire("old"));
+    }
+
+    @Test
+    public void extraReleasesAreIgnored()
+    {
+        TextTextureCache.Entry entry = cache("a");
+        TextTextureCache.release(entry);
+        TextTextureCache.release(entry);
+        TextTextureCache.acquire("a");
+        TextTextureCache.setBudget(0);
+        assertEquals(1, TextTextureCache.size());
+    }
+
+    @Test
+    public void lostContextInvalidatesEntries()
+    {
+        TextTextureCache.Entry entry = cache("a");
+        TextTextureCache.invalidateAll();
+        assertFalse(entry.isValid());
+        assertNull(TextTextureCache.acquire("a"));
+        //releasing an entry from before the loss leaves the new one alone
+        TextTextureCache.Entry fresh = cache("a");
+        TextTextureCache.release(entry);
+        TextTextureCache.setBudget(0);
+        assertSame(fresh, TextTextureCache.acquire("a"));
+    }
+
+    @Test
+    public void dimensionsAreCopied()
+    {
+        TextTextureCache.Entry entry = cache("a");
+        entry.getDimensions().set(0, 0, 1, 1);
+        assertEquals(8, entry.getDimensions().width());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeBudgetThrows()
+    {
+        TextTextureCache.setBudget(-1);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.coffeeshopstudio.icegl.gl;
+
+import android.graphics.Bitmap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Skyline packing and region bookkeeping of the texture atlas, on 128 pixel pages
+ */
+public class TextureAtlasTest
+{
+    private static final int PAGE = 128;
+
+    private TextureAtlas atlas;
+
+    @Before
+    public void setUp()
+    {
+        ScreenConfiguration.gl = new RecordingGLBackend();
+        GLState.invalidate();
+        atlas = new TextureAtlas(PAGE);
+    }
+
+    @After
+    public void tearDown()
+    {
+        atlas.dispose();
+    }
+
+    /**
+     * Pixel bounds of a region inside its page, left, top, right and bottom
+     */
+    private static int[] bounds(TextureAtlas.Region region)
+    {
+        return new int[] {Math.round(region.getU0() * PAGE), Math.round(region.getV0() * PAGE),
+                Math.round(region.getU1() * PAGE), Math.round(region.getV1() * PAGE)};
+    }
+
+    private static boolean overlap(int[] a, int[] b)
+    {
+        return a[0] < b[2] && b[0] < a[2] && a[1] < b[3] && b[1] < a[3];
+    }
+
+    @Test
+    public void regionsNeverOverlapAndStayOnTheirPage()
+    {
+        Random random = new Random(42);
+        List<TextureAtlas.Region> regions = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+            regions.add(atlas.add(new Bitmap(1 + random.nextInt(40), 1 + random.nextInt(40))));
+
+        for (int i = 0; i < regions.size(); i++)
+        {
+            TextureAtlas.Region a = regions.get(i);
+            int[] box = bounds(a);
+            assertEquals(a.getWidth(), box[2] - box[0]);
+            assertEquals(a.getHeight(), box[3] - box[1]);
+            assertTrue(box[0] >= 0 && box[1] >= 0 && box[2] <= PAGE && box[3] <= PAGE);
+            for (int j = i + 1; j < regions.size(); j++)
+            {
+                TextureAtlas.Region b = regions.get(j);
+                if (a.getTextureID() == b.getTextureID())
+                    assertFalse(i + " overlaps " + j, overlap(box, bounds(b)));
+            }
+        }
+    }
+
+    @Test
+    public void fullPageStartsAnother()
+    {
+        atlas.add(new Bitmap(100, 100));
+        atlas.add(new Bitmap(100, 100));
+        assertEquals(2, atlas.getPageCount());
+    }
+
+    @Test
+    public void pageSizedBitmapFitsWithPadding()
+    {
+        atlas.add(new Bitmap(PAGE - 1, PAGE - 1));
+        assertEquals(1, atlas.getPageCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bitmapLargerThanAPageThrows()
+    {
+        atlas.add(new Bitmap(PAGE, 10));
+    }
+
+    @Test
+    public void freedRegionReportsItAndBumpsItsVersion()
+    {
+        atlas.add(new Bitmap(10, 10));
+        TextureAtlas.Region region = atlas.add(new Bitmap(10, 10));
+        int version = region.getVersion();
+        atlas.free(region);
+        assertTrue(region.isFreed());
+        assertEquals(-1, region.getTextureID());
+        assertNotEquals(version, region.getVersion());
+    }
+
+    @Test
+    public void freeingTwiceIsIgnored()
+    {
+        TextureAtlas.Region region = atlas.add(new Bitmap(10, 10));
+        atlas.free(region);
+        int version = region.getVersion();
+        atlas.free(region);
+        assertEquals(version, region.getVersion());
+    }
+
+    @Test
+    public void emptiedPageIsDropped()
+    {
+        atlas.add(new Bitmap(100, 100));
+        TextureAtlas.Region second = atlas.add(new Bitmap(100, 100));
+        atlas.free(second);
+        assertEquals(1, atlas.getPageCount());
+    }
+
+    @Test
+    public void repackClosesHoles()
+    {
+        List<TextureAtlas.Region> regions = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+            regions.add(atlas.add(new Bitmap(60, 60)));
+        int before = atlas.getPageCount();
+        for (int i = 0; i < regions.size(); i += 2)
+            atlas.free(regions.get(i));
+
+        TextureAtlas.Region kept = regions.get(1);
+        int version = kept.getVersion();
+        atlas.repack();
+        assertTrue(atlas.getPageCount() < before);
+        assertNotEquals(version, kept.getVersion());
+        assertFalse(kept.isFreed());
+    }
+
+    @Test
+    public void lostContextBumpsVersions()
+    {
+        TextureAtlas.Region region = atlas.add(new Bitmap(10, 10));
+        int version = region.getVersion();
+        TextureAtlas.invalidateAll();
+        assertNotEquals(version, region.getVersion());
+        assertTrue(region.getTextureID() > 0);
+    }
+
+    @Test
+    public void disposeFreesEveryRegion()
+    {
+        TextureAtlas.Region region = atlas.add(new Bitmap(10, 10));
+        atlas.dispose();
+        assertTrue(region.isFreed());
+        assertEquals(0, atlas.getPageCount());
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015 Terence Doerksen
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package ca.coffeeshopstudio.icegl.gl;
+
+import android.view.MotionEvent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Coalescing and overflow of the touch queue
+ */
+public class TouchQueueTest
+{
+    private static final int DOWN = MotionEvent.ACTION_DOWN;
+    private static final int UP = MotionEvent.ACTION_UP;
+    private static final int MOVE = MotionEvent.ACTION_MOVE;
+
+    /**
+     * Keeps each touch as "action pointer x"
+     */
+    private static class Recorder implements TouchQueue.TouchHandler
+    {
+        final List<String> touches = new ArrayList<>();
+
+        @Override
+        public void onTouch(int action, int pointerId, float x, float y, long eventTime)
+        {
+            touches.add(action + " " + pointerId + " " + (int) x);
+        }
+    }
+
+    private static String touch(int action, int pointerId, int x)
+    {
+        return action + " " + pointerId + " " + x;
+    }
+
+    @Test
+    public void emptyQueueDispatchesNothing()
+    {
+        assertEquals(0, new TouchQueue().drain(new Recorder()));
+    }
+
+    @Test
+    public void runOfMovesCollapsesIntoTheLast()
+    {
+        TouchQueue queue = new TouchQueue();
+        queue.post(DOWN, 0, 1, 0, 0);
+        for (int x = 2; x <= 10; x++)
+            queue.post(MOVE, 0, x, 0, 0);
+        Recorder recorder = new Recorder();
+        queue.drain(recorder);
+        assertEquals(Arrays.asList(touch(DOWN, 0, 1), touch(MOVE, 0, 10)), recorder.touches);
+    }
+
+    @Test
+    public void pointersCollapseSeparately()
+    {
+        TouchQueue queue = new TouchQueue();
+        queue.post(MOVE, 0, 1, 0, 0);
+        queue.post(MOVE, 1, 2, 0, 0);
+        queue.post(MOVE, 0, 3, 0, 0);
+        queue.post(MOVE, 1, 4, 0, 0);
+        Recorder recorder = new Recorder();
+        queue.drain(recorder);
+        assertEquals(Arrays.asList(touch(MOVE, 0, 3), touch(MOVE, 1, 4)), recorder.touches);
+    }
+
+    @Test
+    public void movesAroundAnUpAreKept()
+    {
+        TouchQueue queue = new TouchQueue();
+        queue.post(MOVE, 0, 1, 0, 0);
+        queue.post(UP, 0, 2, 0, 0);
+        queue.post(MOVE, 0, 3, 0, 0);
+        Recorder recorder = new Recorder();
+        assertEquals(3, queue.drain(recorder));
+    }
+
+    @Test
+    public void unknownPointersAreNotCollapsed()
+    {
+        TouchQueue queue = new TouchQueue();
+        queue.post(MOVE, 40, 1, 0, 0);
+        queue.post(MOVE, 40, 2, 0, 0);
+        assertEquals(2, queue.drain(new Recorder()));
+    }
+
+    @Test
+    public void fullQueueStillTakesTheUp()
+    {
+        TouchQueue queue = new TouchQueue(4);
+        queue.post(DOWN, 0, 1, 0, 0);
+        for (int x = 2; x <= 10; x++)
+            queue.post(MOVE, 0, x, 0, 0);
+        queue.post(UP, 0, 11, 0, 0);
+        Recorder recorder = new Recorder();
+        queue.drain(recorder);
+        assertEquals(touch(UP, 0, 11), recorder.touches.get(recorder.touches.size() - 1));
+    }
+
+    @Test
+    public void onlyMovesAreDroppedWhenFull()
+    {
+        TouchQueue queue = new TouchQueue(4);
+        queue.post(DOWN, 0, 1, 0, 0);
+        queue.post(MOVE, 0, 2, 0, 0);
+        queue.post(MOVE, 0, 3, 0, 0);
+        queue.post(MOVE, 0, 4, 0, 0);
+        queue.post(UP, 0, 5, 0, 0);
+        assertEquals(1, queue.getDroppedRecords());
+    }
+
+    @Test
+    public void drainingMakesRoomAgain()
+    {
+        TouchQueue queue = new TouchQueue(4);
+        for (int round = 0; round < 10; round++)
+        {
+            queue.post(DOWN, 0, round, 0, 0);
+            queue.post(UP, 0, round, 0, 0);
+            assertEquals(2, queue.drain(new Recorder()));
+        }
+        assertEquals(0, queue.getDroppedRecords());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBeAPowerOfTwo()
+    {
+        new TouchQueue(6);
+    }
+}